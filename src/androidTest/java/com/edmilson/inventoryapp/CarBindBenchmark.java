@@ -0,0 +1,187 @@
+package com.edmilson.inventoryapp;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.ImageButton;
+import android.widget.ImageView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.edmilson.inventoryapp.data.Car;
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Microbenchmark of binding the rows of the list: {@link CarAdapter#onBindViewHolder} with its
+ * cached views and shared click listener, versus the old bindView of the cursor adapter, which
+ * looked up the views and the columns, parsed the picture Uri and allocated a click listener on
+ * every bind. Run it on a device and compare the logged timings.
+ * <p>
+ * The rows are bound again with the picture they already show, as when the list reloads after
+ * a sale, so neither path decodes a picture and only the binding itself is timed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CarBindBenchmark {
+
+    private static final String LOG_TAG = CarBindBenchmark.class.getSimpleName();
+
+    /** Rows on the screen, the views are recycled between them */
+    private static final int VIEWS = 8;
+
+    private static final int ROWS = 1000;
+    private static final int ROUNDS = 20;
+
+    private static final String[] PROJECTION = {
+            CarEntry._ID,
+            CarEntry.COLUMN_CAR_NAME,
+            CarEntry.COLUMN_CAR_QUANTITY,
+            CarEntry.COLUMN_CAR_PRICE,
+            CarEntry.COLUMN_CAR_IMAGE};
+
+    @Test
+    public void bindRows() {
+        // Views can only be touched on the main thread
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                benchmark(InstrumentationRegistry.getTargetContext());
+            }
+        });
+    }
+
+    private static void benchmark(Context context) {
+        MatrixCursor cursor = new MatrixCursor(PROJECTION, ROWS);
+        List<Car> cars = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            // Every view always shows the same picture, see the class comment
+            String image = "content://com.edmilson.inventoryapp.benchmark/car" + i % VIEWS;
+            cursor.addRow(new Object[]{i + 1, "Car " + i, i % 50, 20000 + i, image});
+            cars.add(new Car(i + 1, "Car " + i, 20000 + i, i % 50, 0, null, null, image, null, null, 0));
+        }
+
+        FrameLayout parent = new FrameLayout(context);
+        CarAdapter adapter = new CarAdapter(context, new CarAdapter.OnCarClickListener() {
+            @Override
+            public void onCarClick(long id) {
+            }
+        });
+        // The first list is set right away, without computing a difference
+        adapter.submitList(cars);
+        CarAdapter.CarViewHolder[] holders = new CarAdapter.CarViewHolder[VIEWS];
+        View[] views = new View[VIEWS];
+        for (int i = 0; i < VIEWS; i++) {
+            holders[i] = adapter.onCreateViewHolder(parent, 0);
+            holders[i].boundImage = cars.get(i).getListImage();
+            views[i] = LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+        }
+
+        // Warm up both paths before measuring
+        bindHolders(adapter, holders);
+        bindViews(context, views, cursor);
+
+        long holderNanos = 0;
+        long viewNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            bindHolders(adapter, holders);
+            holderNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            bindViews(context, views, cursor);
+            viewNanos += System.nanoTime() - start;
+        }
+
+        Log.i(LOG_TAG, "CarAdapter.onBindViewHolder: " + holderNanos / (ROUNDS * ROWS) + " ns/row");
+        Log.i(LOG_TAG, "Old bindView: " + viewNanos / (ROUNDS * ROWS) + " ns/row");
+
+        // Both paths must show the same car in the last row bound
+        int last = (ROWS - 1) % VIEWS;
+        assertEquals(((TextView) views[last].findViewById(R.id.name_text_view)).getText().toString(),
+                holders[last].nameTextView.getText().toString());
+        assertEquals(((TextView) views[last].findViewById(R.id.price_text_view)).getText().toString(),
+                holders[last].priceTextView.getText().toString());
+    }
+
+    private static void bindHolders(CarAdapter adapter, CarAdapter.CarViewHolder[] holders) {
+        for (int position = 0; position < ROWS; position++) {
+            adapter.onBindViewHolder(holders[position % VIEWS], position);
+        }
+    }
+
+    private static void bindViews(Context context, View[] views, Cursor cursor) {
+        cursor.moveToPosition(-1);
+        for (int position = 0; position < ROWS; position++) {
+            cursor.moveToNext();
+            bindView(views[position % VIEWS], context, cursor);
+        }
+    }
+
+    /**
+     * The bindView of the old cursor adapter. Only the decoding of the picture is left out,
+     * it moved off the main thread and isn't what is measured here.
+     */
+    private static void bindView(View view, final Context context, Cursor cursor) {
+        // Find individual views that we want to modify in the list item layout
+        TextView nameTextView = view.findViewById(R.id.name_text_view);
+        TextView quantityTextView = view.findViewById(R.id.quantity_text_view);
+        TextView priceTextView = view.findViewById(R.id.price_text_view);
+        ImageButton buyImageButton = view.findViewById(R.id.buy_image_button);
+        ImageView carImageView = view.findViewById(R.id.car_image_view_in_list_view);
+
+        // Find the columns of car attributes that we're interested in
+        int nameColumnIndex = cursor.getColumnIndex(CarEntry.COLUMN_CAR_NAME);
+        int quantityColumnIndex = cursor.getColumnIndex(CarEntry.COLUMN_CAR_QUANTITY);
+        int priceColumnIndex = cursor.getColumnIndex(CarEntry.COLUMN_CAR_PRICE);
+        int idColumnIndex = cursor.getColumnIndex(CarEntry._ID);
+        int imageColumnIndex = cursor.getColumnIndex(CarEntry.COLUMN_CAR_IMAGE);
+
+        // Read the car attributes from the Cursor for the current car
+        String carName = cursor.getString(nameColumnIndex);
+        final int carQuantity = cursor.getInt(quantityColumnIndex);
+        int carPrice = cursor.getInt(priceColumnIndex);
+        final long carId = cursor.getLong(idColumnIndex);
+        String carImageUriString = cursor.getString(imageColumnIndex);
+        Uri carImageUri = Uri.parse(carImageUriString);
+
+        // Update the TextViews and the ImageView with the attributes for the current car
+        nameTextView.setText(carName);
+        quantityTextView.setText(Integer.toString(carQuantity));
+        priceTextView.setText(Integer.toString(carPrice));
+        // The Uri is kept rather than decoded, see above
+        carImageView.setTag(carImageUri);
+
+        // Handle the sell button click on the main screen
+        buyImageButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Uri currentUri = ContentUris.withAppendedId(CarEntry.CONTENT_URI, carId);
+                if (carQuantity > 0) {
+                    String newQuantity = String.valueOf(carQuantity - 1);
+                    ContentValues values = new ContentValues();
+                    values.put(CarEntry.COLUMN_CAR_QUANTITY, newQuantity);
+                    context.getContentResolver().update(currentUri, values, null, null);
+                } else {
+                    Toast.makeText(context, context.getString(R.string.error_message_out_of_stock),
+                            Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+}
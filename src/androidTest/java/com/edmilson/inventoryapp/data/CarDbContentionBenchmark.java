@@ -0,0 +1,128 @@
+package com.edmilson.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+import com.edmilson.inventoryapp.data.CarContract.SupplierEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of reloading the car list while cars are being sold on another thread, with the
+ * rollback journal versus write-ahead logging. Run it on a device and compare the logged
+ * read latencies: with the rollback journal the reads wait for the sales.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CarDbContentionBenchmark {
+
+    private static final String LOG_TAG = CarDbContentionBenchmark.class.getSimpleName();
+
+    private static final int ROWS = 5000;
+    private static final int SUPPLIERS = 20;
+    private static final int RELOADS = 50;
+
+    private static final String SQL_SELL = "UPDATE " + CarEntry.TABLE_NAME + " SET "
+            + CarEntry.COLUMN_CAR_QUANTITY + " = " + CarEntry.COLUMN_CAR_QUANTITY + " - 1 WHERE "
+            + CarEntry._ID + " = ?";
+
+    @Test
+    public void reloadWhileSelling() throws InterruptedException {
+        long rollbackNanos = measure(new CarDbHelper.Config(false, 4096, 2048, 1000), "bench_rollback.db");
+        long walNanos = measure(CarDbHelper.Config.DEFAULT, "bench_wal.db");
+
+        Log.i(LOG_TAG, "Reload with the rollback journal: " + rollbackNanos / 1000 + " us");
+        Log.i(LOG_TAG, "Reload with write-ahead logging: " + walNanos / 1000 + " us");
+    }
+
+    /**
+     * Reload the whole list over and over while another thread keeps on selling cars, and
+     * return the average time of a reload.
+     */
+    private static long measure(CarDbHelper.Config config, String name) throws InterruptedException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(name);
+        final CarDbHelper helper = new CarDbHelper(context, name, config);
+        try {
+            fill(helper.getWritableDatabase());
+
+            final AtomicBoolean selling = new AtomicBoolean(true);
+            final AtomicInteger sales = new AtomicInteger();
+            Thread seller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SQLiteDatabase db = helper.getWritableDatabase();
+                    int id = 0;
+                    while (selling.get()) {
+                        db.execSQL(SQL_SELL, new Object[]{id % ROWS + 1});
+                        id++;
+                        sales.incrementAndGet();
+                    }
+                }
+            });
+            seller.start();
+
+            long totalNanos = 0;
+            int rowsRead = 0;
+            SQLiteDatabase db = helper.getReadableDatabase();
+            for (int i = 0; i < RELOADS; i++) {
+                long start = System.nanoTime();
+                Cursor cursor = db.query(CarEntry.VIEW_NAME, null, null, null, null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        rowsRead++;
+                    }
+                } finally {
+                    cursor.close();
+                }
+                totalNanos += System.nanoTime() - start;
+            }
+
+            selling.set(false);
+            seller.join();
+            Log.i(LOG_TAG, name + ": " + sales.get() + " sales during the reloads");
+
+            assertEquals(ROWS * RELOADS, rowsRead);
+            return totalNanos / RELOADS;
+        } finally {
+            helper.close();
+            context.deleteDatabase(name);
+        }
+    }
+
+    private static void fill(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            long[] supplierIds = new long[SUPPLIERS];
+            ContentValues supplier = new ContentValues();
+            for (int i = 0; i < SUPPLIERS; i++) {
+                supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Supplier " + i);
+                supplier.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, "order@supplier" + i + ".com");
+                supplierIds[i] = db.insert(SupplierEntry.TABLE_NAME, null, supplier);
+            }
+            ContentValues values = new ContentValues();
+            for (int i = 1; i <= ROWS; i++) {
+                values.put(CarEntry.COLUMN_CAR_NAME, "Car " + i);
+                values.put(CarEntry.COLUMN_CAR_PRICE, 20000 + i);
+                values.put(CarEntry.COLUMN_CAR_QUANTITY, 1000000);
+                values.put(CarEntry.COLUMN_CAR_SUPPLIER_ID, supplierIds[i % SUPPLIERS]);
+                values.put(CarEntry.COLUMN_CAR_IMAGE, "file:///car" + i + ".jpg");
+                db.insert(CarEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
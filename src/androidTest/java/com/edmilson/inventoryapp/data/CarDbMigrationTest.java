@@ -0,0 +1,462 @@
+package com.edmilson.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+import com.edmilson.inventoryapp.data.CarContract.SalesEntry;
+import com.edmilson.inventoryapp.data.CarContract.StatsEntry;
+import com.edmilson.inventoryapp.data.CarContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the migrations of {@link CarDbHelper}, one at a time: a database is brought to the
+ * version before the migration, filled, then only that migration is applied to it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CarDbMigrationTest {
+
+    /** The cars table of version 1, as it was released */
+    private static final String SQL_CREATE_CARS_V1 = "CREATE TABLE cars ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "name TEXT NOT NULL, "
+            + "price INTEGER NOT NULL, "
+            + "quantity INTEGER NOT NULL, "
+            + "supplier TEXT NOT NULL, "
+            + "email TEXT NOT NULL, "
+            + "image TEXT NOT NULL);";
+
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mDb = SQLiteDatabase.create(null);
+        mDb.setForeignKeyConstraintsEnabled(true);
+        mDb.execSQL(SQL_CREATE_CARS_V1);
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    @Test
+    public void migration2_addsTheRenditionColumns() {
+        long id = insertCarV1("Mustang", "Ford Dealer", "order@ford.com");
+
+        applyMigration(2);
+
+        List<String> columns = getColumns(CarEntry.TABLE_NAME);
+        assertTrue(columns.contains(CarEntry.COLUMN_CAR_THUMBNAIL));
+        assertTrue(columns.contains(CarEntry.COLUMN_CAR_EDITOR_IMAGE));
+        // The cars already there have no renditions yet
+        assertEquals(id, queryCarId("Mustang"));
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDb, CarEntry.TABLE_NAME, CarEntry.COLUMN_CAR_THUMBNAIL
+                + " IS NULL AND " + CarEntry.COLUMN_CAR_EDITOR_IMAGE + " IS NULL"));
+    }
+
+    @Test
+    public void migration3_createsTheIndexes() {
+        migrateTo(2);
+        long mustang = insertCarV1("Mustang", "Ford Dealer", "order@ford.com");
+        long uno = insertCarV1("Uno", "Fiat Store", "sales@fiat.com");
+
+        applyMigration(3);
+
+        List<String> indexes = getIndexes(CarEntry.TABLE_NAME);
+        assertEquals(3, indexes.size());
+        assertTrue(indexes.contains(getIndexName(CarEntry.COLUMN_CAR_NAME)));
+        assertTrue(indexes.contains(getIndexName(CarEntry.COLUMN_CAR_SUPPLIER)));
+        assertTrue(indexes.contains(getIndexName(CarEntry.COLUMN_CAR_PRICE)));
+
+        // The cars are all still there, and are found through the index on the name
+        assertEquals(2, DatabaseUtils.queryNumEntries(mDb, CarEntry.TABLE_NAME));
+        assertEquals(mustang, queryCarId("Mustang"));
+        assertEquals(uno, queryCarId("Uno"));
+        assertEquals("Fiat Store", DatabaseUtils.stringForQuery(mDb, "SELECT " + CarEntry.COLUMN_CAR_SUPPLIER
+                + " FROM " + CarEntry.TABLE_NAME + " WHERE " + CarEntry._ID + " = " + uno, null));
+        String plan = explainQueryPlan("SELECT " + CarEntry._ID + " FROM " + CarEntry.TABLE_NAME
+                + " WHERE " + CarEntry.COLUMN_CAR_NAME + " = 'Uno'");
+        assertTrue(plan, plan.contains(getIndexName(CarEntry.COLUMN_CAR_NAME)));
+    }
+
+    @Test
+    public void migration4_indexesTheCarsForFullTextSearch() {
+        migrateTo(3);
+        long mustang = insertCarV1("Mustang", "Ford Dealer", "order@ford.com");
+        long uno = insertCarV1("Uno", "Fiat Store", "sales@fiat.com");
+
+        applyMigration(4);
+
+        // The cars already there are indexed by name and supplier
+        assertEquals(mustang, searchOne("mustang*"));
+        assertEquals(uno, searchOne("fiat*"));
+
+        // The triggers keep the index in sync with the cars
+        long golf = insertCarV1("Golf", "VW Store", "order@vw.com");
+        assertEquals(golf, searchOne("golf*"));
+        mDb.execSQL("UPDATE " + CarEntry.TABLE_NAME + " SET " + CarEntry.COLUMN_CAR_NAME
+                + " = 'Panda' WHERE " + CarEntry._ID + " = " + uno);
+        assertEquals(uno, searchOne("panda*"));
+        assertEquals(0, countMatches("uno*"));
+        mDb.delete(CarEntry.TABLE_NAME, CarEntry._ID + " = " + mustang, null);
+        assertEquals(0, countMatches("mustang*"));
+        assertEquals(0, countMatches("ford*"));
+    }
+
+    @Test
+    public void migration5_startsTheTotalsFromTheCars() {
+        migrateTo(4);
+        // Every car costs 20000 and has 3 units
+        insertCarV1("Mustang", "Ford Dealer", "order@ford.com");
+        long uno = insertCarV1("Uno", "Fiat Store", "sales@fiat.com");
+
+        applyMigration(5);
+
+        assertStats(2, 6, 120000);
+        assertTrue(getIndexes(CarEntry.TABLE_NAME).contains(getIndexName(CarEntry.COLUMN_CAR_QUANTITY)));
+
+        // The triggers keep the totals up to date
+        insertCarV1("Golf", "VW Store", "order@vw.com");
+        assertStats(3, 9, 180000);
+        mDb.execSQL("UPDATE " + CarEntry.TABLE_NAME + " SET " + CarEntry.COLUMN_CAR_PRICE + " = 10000, "
+                + CarEntry.COLUMN_CAR_QUANTITY + " = 1 WHERE " + CarEntry._ID + " = " + uno);
+        assertStats(3, 7, 130000);
+        mDb.delete(CarEntry.TABLE_NAME, CarEntry._ID + " = " + uno, null);
+        assertStats(2, 6, 120000);
+    }
+
+    @Test
+    public void migration6_addsTheLedgerAndItsTotals() {
+        migrateTo(5);
+        long mustang = insertCarV1("Mustang", "Ford Dealer", "order@ford.com");
+        long uno = insertCarV1("Uno", "Fiat Store", "sales@fiat.com");
+
+        applyMigration(6);
+
+        assertTrue(getIndexes(SalesEntry.TABLE_NAME).contains(
+                SalesEntry.TABLE_NAME + "_" + SalesEntry.COLUMN_SOLD_AT + "_idx"));
+        insertSale(mustang, 2, 20000, "Ford Dealer", 100);
+        insertSale(mustang, 1, 19000, "Ford Dealer", 101);
+        insertSale(uno, 1, 9000, "Fiat Store", 101);
+
+        // Every sale is added to the totals of its car, day and supplier
+        assertRollup(SalesEntry.TABLE_BY_CAR, SalesEntry.COLUMN_CAR_ID, String.valueOf(mustang), 3, 59000, 2);
+        assertRollup(SalesEntry.TABLE_BY_CAR, SalesEntry.COLUMN_CAR_ID, String.valueOf(uno), 1, 9000, 1);
+        assertRollup(SalesEntry.TABLE_BY_DAY, SalesEntry.COLUMN_DAY, "101", 2, 28000, 2);
+        assertRollup(SalesEntry.TABLE_BY_SUPPLIER, SalesEntry.COLUMN_SUPPLIER, "Ford Dealer", 3, 59000, 2);
+
+        // Compacting the ledger leaves the totals as they are
+        mDb.delete(SalesEntry.TABLE_NAME, null, null);
+        assertRollup(SalesEntry.TABLE_BY_DAY, SalesEntry.COLUMN_DAY, "100", 2, 40000, 1);
+    }
+
+    @Test
+    public void migration7_mergesSuppliersIgnoringCaseAndSpaces() {
+        migrateTo(6);
+        insertCarV1("Mustang", "Ford Dealer", "old@ford.com");
+        insertCarV1("Focus", "  ford dealer ", "older@ford.com");
+        insertCarV1("Uno", "Fiat Store", "sales@fiat.com");
+        insertCarV1("Fiesta", "FORD DEALER", "new@ford.com");
+
+        applyMigration(7);
+
+        assertEquals(2, DatabaseUtils.queryNumEntries(mDb, SupplierEntry.TABLE_NAME));
+        // The most recent car of the supplier gives its name and email
+        assertEquals("new@ford.com", querySupplierEmail("ford dealer"));
+        assertEquals("FORD DEALER", DatabaseUtils.stringForQuery(mDb, "SELECT "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM " + SupplierEntry.TABLE_NAME
+                + " WHERE " + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " = 'new@ford.com'", null));
+        assertEquals("sales@fiat.com", querySupplierEmail("Fiat Store"));
+
+        // All the Ford cars point to the same supplier
+        assertEquals(1, DatabaseUtils.longForQuery(mDb, "SELECT COUNT(DISTINCT "
+                + CarEntry.COLUMN_CAR_SUPPLIER_ID + ") FROM " + CarEntry.TABLE_NAME
+                + " WHERE " + CarEntry.COLUMN_CAR_NAME + " != 'Uno'", null));
+    }
+
+    @Test
+    public void migration7_keepsIdsAndSequence() {
+        migrateTo(6);
+        long first = insertCarV1("Mustang", "Ford Dealer", "order@ford.com");
+        long second = insertCarV1("Focus", "Ford Dealer", "order@ford.com");
+        long third = insertCarV1("Uno", "Fiat Store", "sales@fiat.com");
+        long last = insertCarV1("Fiesta", "Ford Dealer", "order@ford.com");
+        // The last ID handed out must not be reused once its car is gone
+        mDb.delete(CarEntry.TABLE_NAME, CarEntry._ID + " IN (?, ?)",
+                new String[]{String.valueOf(second), String.valueOf(last)});
+
+        applyMigration(7);
+
+        assertEquals(first, queryCarId("Mustang"));
+        assertEquals(third, queryCarId("Uno"));
+        assertEquals(2, DatabaseUtils.queryNumEntries(mDb, CarEntry.TABLE_NAME));
+        assertEquals(last, DatabaseUtils.longForQuery(mDb,
+                "SELECT seq FROM sqlite_sequence WHERE name = '" + CarEntry.TABLE_NAME + "'", null));
+        assertEquals(0, DatabaseUtils.longForQuery(mDb,
+                "SELECT COUNT(*) FROM sqlite_sequence WHERE name = '" + CarEntry.TABLE_NAME + "_new'", null));
+
+        // The next car gets the next ID
+        assertEquals(last + 1, insertCarV7("Golf", queryCarSupplierId(first)));
+    }
+
+    @Test
+    public void migration7_changesTheSchema() {
+        migrateTo(6);
+        insertCarV1("Mustang", "Ford Dealer", "order@ford.com");
+
+        applyMigration(7);
+
+        List<String> columns = getColumns(CarEntry.TABLE_NAME);
+        assertTrue(columns.contains(CarEntry.COLUMN_CAR_SUPPLIER_ID));
+        assertFalse(columns.contains(CarEntry.COLUMN_CAR_SUPPLIER));
+        assertFalse(columns.contains(CarEntry.COLUMN_CAR_EMAIL));
+
+        // The view gives the cars their supplier name and email back
+        Cursor cursor = mDb.query(CarEntry.VIEW_NAME, new String[]{CarEntry.COLUMN_CAR_SUPPLIER,
+                CarEntry.COLUMN_CAR_EMAIL}, null, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Ford Dealer", cursor.getString(0));
+            assertEquals("order@ford.com", cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+
+        // The indexes and stats triggers of the old table are created again
+        List<String> indexes = getIndexes(CarEntry.TABLE_NAME);
+        assertEquals(4, indexes.size());
+        assertTrue(indexes.contains(getIndexName(CarEntry.COLUMN_CAR_SUPPLIER_ID)));
+        insertCarV7("Golf", 1);
+        assertEquals(2, DatabaseUtils.longForQuery(mDb, "SELECT " + StatsEntry.COLUMN_CAR_COUNT
+                + " FROM " + StatsEntry.TABLE_NAME, null));
+    }
+
+    @Test
+    public void migration7_rebuildsTheFullTextIndex() {
+        migrateTo(6);
+        long mustang = insertCarV1("Mustang", " Ford Dealer ", "order@ford.com");
+        long uno = insertCarV1("Uno", "Fiat Store", "sales@fiat.com");
+
+        applyMigration(7);
+
+        // The index has its own copy of the supplier, trimmed like the suppliers table
+        assertEquals(2, DatabaseUtils.queryNumEntries(mDb, CarEntry.FTS_TABLE_NAME));
+        assertEquals(mustang, searchOne("dealer*"));
+        assertEquals(uno, searchOne("uno*"));
+        assertEquals("Ford Dealer", DatabaseUtils.stringForQuery(mDb, "SELECT "
+                + CarEntry.COLUMN_CAR_SUPPLIER + " FROM " + CarEntry.FTS_TABLE_NAME
+                + " WHERE docid = " + mustang, null));
+
+        // The new triggers keep it in sync with the cars and the suppliers
+        long golf = insertCarV7("Golf", queryCarSupplierId(uno));
+        assertEquals(golf, searchOne("golf*"));
+        mDb.execSQL("UPDATE " + SupplierEntry.TABLE_NAME + " SET " + SupplierEntry.COLUMN_SUPPLIER_NAME
+                + " = 'Italian Cars' WHERE " + SupplierEntry._ID + " = " + queryCarSupplierId(uno));
+        assertEquals(2, countMatches("italian*"));
+        mDb.delete(CarEntry.TABLE_NAME, CarEntry._ID + " = " + mustang, null);
+        assertEquals(0, countMatches("dealer*"));
+    }
+
+    @Test
+    public void migration8_addsTheVersionToTheCarsAndTheView() {
+        migrateTo(7);
+        ContentValues supplier = new ContentValues();
+        supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Ford Dealer");
+        supplier.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, "order@ford.com");
+        long id = insertCarV7("Mustang", mDb.insertOrThrow(SupplierEntry.TABLE_NAME, null, supplier));
+
+        applyMigration(8);
+
+        assertEquals(0, DatabaseUtils.longForQuery(mDb, "SELECT " + CarEntry.COLUMN_CAR_VERSION
+                + " FROM " + CarEntry.VIEW_NAME + " WHERE " + CarEntry._ID + " = " + id, null));
+        assertEquals("Ford Dealer", DatabaseUtils.stringForQuery(mDb, "SELECT "
+                + CarEntry.COLUMN_CAR_SUPPLIER + " FROM " + CarEntry.VIEW_NAME, null));
+        // The cars keep their data
+        assertEquals(id, queryCarId("Mustang"));
+    }
+
+    /**
+     * Bring the version 1 database to the given version, through all the migrations.
+     */
+    private void migrateTo(int version) {
+        CarDbHelper.migrate(mDb, 1, version);
+    }
+
+    /**
+     * Apply the migration reaching the given version, in a transaction like an upgrade.
+     */
+    private void applyMigration(int version) {
+        mDb.beginTransaction();
+        try {
+            CarDbHelper.getMigration(version).migrate(mDb);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * Insert a car with the columns of version 1, which the cars table keeps up to version 6.
+     */
+    private long insertCarV1(String name, String supplier, String email) {
+        ContentValues values = new ContentValues();
+        values.put(CarEntry.COLUMN_CAR_NAME, name);
+        values.put(CarEntry.COLUMN_CAR_PRICE, 20000);
+        values.put(CarEntry.COLUMN_CAR_QUANTITY, 3);
+        values.put(CarEntry.COLUMN_CAR_SUPPLIER, supplier);
+        values.put(CarEntry.COLUMN_CAR_EMAIL, email);
+        values.put(CarEntry.COLUMN_CAR_IMAGE, "content://images/" + name);
+        return mDb.insertOrThrow(CarEntry.TABLE_NAME, null, values);
+    }
+
+    private long insertCarV7(String name, long supplierId) {
+        ContentValues values = new ContentValues();
+        values.put(CarEntry.COLUMN_CAR_NAME, name);
+        values.put(CarEntry.COLUMN_CAR_PRICE, 20000);
+        values.put(CarEntry.COLUMN_CAR_QUANTITY, 3);
+        values.put(CarEntry.COLUMN_CAR_SUPPLIER_ID, supplierId);
+        values.put(CarEntry.COLUMN_CAR_IMAGE, "content://images/" + name);
+        return mDb.insertOrThrow(CarEntry.TABLE_NAME, null, values);
+    }
+
+    private void insertSale(long carId, int amount, int unitPrice, String supplier, long day) {
+        ContentValues values = new ContentValues();
+        values.put(SalesEntry.COLUMN_CAR_ID, carId);
+        values.put(SalesEntry.COLUMN_AMOUNT, amount);
+        values.put(SalesEntry.COLUMN_UNIT_PRICE, unitPrice);
+        values.put(SalesEntry.COLUMN_SUPPLIER, supplier);
+        values.put(SalesEntry.COLUMN_SOLD_AT, day * 24 * 60 * 60 * 1000);
+        values.put(SalesEntry.COLUMN_DAY, day);
+        mDb.insertOrThrow(SalesEntry.TABLE_NAME, null, values);
+    }
+
+    private String querySupplierEmail(String name) {
+        return DatabaseUtils.stringForQuery(mDb, "SELECT " + SupplierEntry.COLUMN_SUPPLIER_EMAIL
+                + " FROM " + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry.COLUMN_SUPPLIER_NAME
+                + " = ?", new String[]{name});
+    }
+
+    private long queryCarId(String name) {
+        return DatabaseUtils.longForQuery(mDb, "SELECT " + CarEntry._ID + " FROM " + CarEntry.TABLE_NAME
+                + " WHERE " + CarEntry.COLUMN_CAR_NAME + " = ?", new String[]{name});
+    }
+
+    private long queryCarSupplierId(long id) {
+        return DatabaseUtils.longForQuery(mDb, "SELECT " + CarEntry.COLUMN_CAR_SUPPLIER_ID + " FROM "
+                + CarEntry.TABLE_NAME + " WHERE " + CarEntry._ID + " = " + id, null);
+    }
+
+    /**
+     * Return the docid of the only car matching the given full-text query.
+     */
+    private long searchOne(String match) {
+        Cursor cursor = mDb.rawQuery("SELECT docid FROM " + CarEntry.FTS_TABLE_NAME + " WHERE "
+                + CarEntry.FTS_TABLE_NAME + " MATCH ?", new String[]{match});
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long countMatches(String match) {
+        return DatabaseUtils.longForQuery(mDb, "SELECT COUNT(*) FROM " + CarEntry.FTS_TABLE_NAME
+                + " WHERE " + CarEntry.FTS_TABLE_NAME + " MATCH ?", new String[]{match});
+    }
+
+    private void assertStats(long carCount, long totalQuantity, long totalValue) {
+        Cursor cursor = mDb.query(StatsEntry.TABLE_NAME, new String[]{StatsEntry.COLUMN_CAR_COUNT,
+                StatsEntry.COLUMN_TOTAL_QUANTITY, StatsEntry.COLUMN_TOTAL_VALUE}, null, null, null, null, null);
+        try {
+            // There is only ever the summary row
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(carCount, cursor.getLong(0));
+            assertEquals(totalQuantity, cursor.getLong(1));
+            assertEquals(totalValue, cursor.getLong(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void assertRollup(String table, String keyColumn, String key, long units, long revenue,
+                              long saleCount) {
+        Cursor cursor = mDb.query(table, new String[]{SalesEntry.COLUMN_UNITS, SalesEntry.COLUMN_REVENUE,
+                SalesEntry.COLUMN_SALE_COUNT}, keyColumn + " = ?", new String[]{key}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(units, cursor.getLong(0));
+            assertEquals(revenue, cursor.getLong(1));
+            assertEquals(saleCount, cursor.getLong(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private List<String> getColumns(String table) {
+        List<String> columns = new ArrayList<>();
+        Cursor cursor = mDb.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(cursor.getColumnIndexOrThrow("name")));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    /**
+     * Return the names of the indexes created on the table, leaving out the ones SQLite makes
+     * for its own constraints.
+     */
+    private List<String> getIndexes(String table) {
+        List<String> indexes = new ArrayList<>();
+        Cursor cursor = mDb.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index'"
+                + " AND tbl_name = ? AND name NOT LIKE 'sqlite_%'", new String[]{table});
+        try {
+            while (cursor.moveToNext()) {
+                indexes.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return indexes;
+    }
+
+    private static String getIndexName(String column) {
+        return CarEntry.TABLE_NAME + "_" + column + "_idx";
+    }
+
+    /**
+     * Return the steps SQLite plans for the given query, one per line.
+     */
+    private String explainQueryPlan(String sql) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
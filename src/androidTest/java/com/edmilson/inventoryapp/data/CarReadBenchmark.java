@@ -0,0 +1,83 @@
+package com.edmilson.inventoryapp.data;
+
+import android.database.MatrixCursor;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Microbenchmark of reading cars from a cursor, looking the column indexes up for every row
+ * versus resolving them once per cursor. Run it on a device and compare the logged timings.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CarReadBenchmark {
+
+    private static final String LOG_TAG = CarReadBenchmark.class.getSimpleName();
+
+    private static final int ROWS = 10000;
+    private static final int ROUNDS = 20;
+
+    private static final String[] PROJECTION = {
+            CarEntry._ID,
+            CarEntry.COLUMN_CAR_NAME,
+            CarEntry.COLUMN_CAR_QUANTITY,
+            CarEntry.COLUMN_CAR_PRICE,
+            CarEntry.COLUMN_CAR_IMAGE,
+            CarEntry.COLUMN_CAR_THUMBNAIL};
+
+    @Test
+    public void readCars() {
+        MatrixCursor cursor = new MatrixCursor(PROJECTION, ROWS);
+        for (int i = 1; i <= ROWS; i++) {
+            cursor.addRow(new Object[]{i, "Car " + i, i % 50, 20000 + i, "file:///car" + i + ".jpg", null});
+        }
+
+        // Warm up both paths before measuring
+        readPerRow(cursor);
+        readPerCursor(cursor);
+
+        long perRowNanos = 0;
+        long perCursorNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            readPerRow(cursor);
+            perRowNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            readPerCursor(cursor);
+            perCursorNanos += System.nanoTime() - start;
+        }
+
+        Log.i(LOG_TAG, "Column lookup per row: " + perRowNanos / (ROUNDS * ROWS) + " ns/row");
+        Log.i(LOG_TAG, "Column lookup per cursor: " + perCursorNanos / (ROUNDS * ROWS) + " ns/row");
+
+        // Both paths must read the same cars
+        cursor.moveToPosition(ROWS / 2);
+        assertEquals(Car.fromCursor(cursor), Car.fromCursor(cursor, new Car.Columns(cursor)));
+    }
+
+    private static long readPerRow(MatrixCursor cursor) {
+        long checksum = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            checksum += Car.fromCursor(cursor).getQuantity();
+        }
+        return checksum;
+    }
+
+    private static long readPerCursor(MatrixCursor cursor) {
+        long checksum = 0;
+        Car.Columns columns = new Car.Columns(cursor);
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            checksum += Car.fromCursor(cursor, columns).getQuantity();
+        }
+        return checksum;
+    }
+}
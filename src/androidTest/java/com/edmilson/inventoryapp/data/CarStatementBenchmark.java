@@ -0,0 +1,91 @@
+package com.edmilson.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+import com.edmilson.inventoryapp.data.CarContract.SupplierEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Microbenchmark of setting the quantity of a car through {@link SQLiteDatabase#update} versus
+ * a statement taken from the cache of {@link CarDbHelper}. Run it on a device and compare the
+ * logged timings.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CarStatementBenchmark {
+
+    private static final String LOG_TAG = CarStatementBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "bench_statements.db";
+
+    private static final int UPDATES = 5000;
+
+    private static final String SQL_UPDATE_QUANTITY = "UPDATE " + CarEntry.TABLE_NAME
+            + " SET " + CarEntry.COLUMN_CAR_QUANTITY + " = ? WHERE " + CarEntry._ID + " = ?";
+
+    @Test
+    public void updateQuantity() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        CarDbHelper helper = new CarDbHelper(context, DATABASE_NAME, CarDbHelper.Config.DEFAULT);
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            ContentValues supplier = new ContentValues();
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Fast Car Store");
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, "order@fastcarstore.com");
+            long supplierId = db.insert(SupplierEntry.TABLE_NAME, null, supplier);
+
+            ContentValues car = new ContentValues();
+            car.put(CarEntry.COLUMN_CAR_NAME, "Ford Mustang");
+            car.put(CarEntry.COLUMN_CAR_PRICE, 25845);
+            car.put(CarEntry.COLUMN_CAR_QUANTITY, 0);
+            car.put(CarEntry.COLUMN_CAR_SUPPLIER_ID, supplierId);
+            car.put(CarEntry.COLUMN_CAR_IMAGE, "file:///car.jpg");
+            long id = db.insert(CarEntry.TABLE_NAME, null, car);
+            String[] selectionArgs = {String.valueOf(id)};
+
+            long start = System.nanoTime();
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < UPDATES; i++) {
+                values.put(CarEntry.COLUMN_CAR_QUANTITY, i);
+                db.update(CarEntry.TABLE_NAME, values, CarEntry._ID + "=?", selectionArgs);
+            }
+            long updateNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < UPDATES; i++) {
+                SQLiteStatement statement = helper.acquireStatement(SQL_UPDATE_QUANTITY);
+                try {
+                    statement.bindLong(1, i);
+                    statement.bindLong(2, id);
+                    statement.executeUpdateDelete();
+                } finally {
+                    helper.releaseStatement(statement);
+                }
+            }
+            long statementNanos = System.nanoTime() - start;
+
+            Log.i(LOG_TAG, "SQLiteDatabase.update: " + updateNanos / UPDATES / 1000 + " us/update");
+            Log.i(LOG_TAG, "Cached statement: " + statementNanos / UPDATES / 1000 + " us/update");
+
+            // The last update went through the cached statement
+            SQLiteStatement quantity = db.compileStatement("SELECT " + CarEntry.COLUMN_CAR_QUANTITY
+                    + " FROM " + CarEntry.TABLE_NAME + " WHERE " + CarEntry._ID + " = " + id);
+            assertEquals(UPDATES - 1, quantity.simpleQueryForLong());
+            quantity.close();
+        } finally {
+            helper.close();
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.edmilson.inventoryapp.data;
+
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+import android.util.Log;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of selling a car through {@link CarWriteQueue} versus one provider update per sale.
+ * It also checks that the queued sales are applied in order and stop at the stock. Run it on a
+ * device and compare the logged timings.
+ * <p>
+ * The sales go to a provider of the benchmark's own, on a database of its own deleted at the
+ * end: the sales ledger is append-only, so they can't be taken back out of the app's database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CarWriteQueueBenchmark {
+
+    private static final String LOG_TAG = CarWriteQueueBenchmark.class.getSimpleName();
+
+    private static final int SALES = 500;
+
+    @Test
+    public void sell() throws InterruptedException {
+        BenchmarkContext context = new BenchmarkContext(InstrumentationRegistry.getTargetContext());
+        context.deleteDatabase(CarDbHelper.DATABASE_NAME);
+        CarProvider provider = new CarProvider();
+        provider.attachInfo(context, null);
+        MockContentResolver contentResolver = context.getContentResolver();
+        contentResolver.addProvider(CarContract.CONTENT_AUTHORITY, provider);
+        CarWriteQueue writeQueue = new CarWriteQueue(context);
+
+        Uri carUri = insertCar(contentResolver);
+        long id = ContentUris.parseId(carUri);
+        try {
+            long start = System.nanoTime();
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < SALES; i++) {
+                contentResolver.update(CarEntry.buildSellUri(id), values, null, null);
+            }
+            long updateMillis = (System.nanoTime() - start) / 1000000;
+            assertEquals(SALES, getQuantity(contentResolver, carUri));
+
+            // One sale more than the stock, the last one has to fail
+            final AtomicInteger sold = new AtomicInteger();
+            final AtomicInteger lastCount = new AtomicInteger(-1);
+            final CountDownLatch done = new CountDownLatch(SALES + 1);
+            start = System.nanoTime();
+            for (int i = 0; i <= SALES; i++) {
+                writeQueue.sell(id, new CarWriteQueue.Callback() {
+                    @Override
+                    public void onWriteFinished(ContentProviderResult result, Exception error) {
+                        // Runs on the main thread, the checks are made by the test thread
+                        int count = result != null ? result.count : -1;
+                        sold.addAndGet(count);
+                        lastCount.set(count);
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(60, TimeUnit.SECONDS));
+            long queueMillis = (System.nanoTime() - start) / 1000000;
+
+            Log.i(LOG_TAG, "Provider updates: " + updateMillis + " ms for " + SALES + " sales");
+            Log.i(LOG_TAG, "Write queue: " + queueMillis + " ms for " + SALES + " sales");
+            assertEquals(SALES, sold.get());
+            assertEquals(0, lastCount.get());
+            assertEquals(0, getQuantity(contentResolver, carUri));
+        } finally {
+            provider.shutdown();
+            context.deleteDatabase(CarDbHelper.DATABASE_NAME);
+        }
+    }
+
+    private static Uri insertCar(ContentResolver contentResolver) {
+        ContentValues car = new ContentValues();
+        car.put(CarEntry.COLUMN_CAR_NAME, "Write Queue Benchmark");
+        car.put(CarEntry.COLUMN_CAR_PRICE, 25845);
+        car.put(CarEntry.COLUMN_CAR_QUANTITY, SALES * 2);
+        car.put(CarEntry.COLUMN_CAR_SUPPLIER, "Fast Car Store");
+        car.put(CarEntry.COLUMN_CAR_EMAIL, "order@fastcarstore.com");
+        car.put(CarEntry.COLUMN_CAR_IMAGE, "file:///car.jpg");
+        Uri uri = contentResolver.insert(CarEntry.CONTENT_URI, car);
+        assertNotNull(uri);
+        return uri;
+    }
+
+    /**
+     * Context whose databases are renamed, so they don't clash with the ones of the app, and
+     * whose content resolver only knows the providers added to it.
+     */
+    private static final class BenchmarkContext extends RenamingDelegatingContext {
+
+        private final MockContentResolver mContentResolver = new MockContentResolver();
+
+        BenchmarkContext(Context context) {
+            super(context, "benchmark_");
+        }
+
+        @Override
+        public MockContentResolver getContentResolver() {
+            return mContentResolver;
+        }
+    }
+
+    private static int getQuantity(ContentResolver contentResolver, Uri carUri) {
+        Cursor cursor = contentResolver.query(carUri, new String[]{CarEntry.COLUMN_CAR_QUANTITY},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.content.ContentValues;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the parsing and checking of the binary files by {@link BinaryCarReader}. The files
+ * are written by hand, see {@link FileBuilder}, so they can be broken in every way.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BinaryCarReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void readsRecords() throws IOException {
+        BinaryCarReader reader = reader(new FileBuilder()
+                .car("Mustang", 25845, 3, "Fast Car Store", "order@fastcarstore.com", "content://images/1")
+                .car("Übermobil", 9000, 0, "Störe", "", "content://images/2")
+                .build());
+
+        ContentValues first = reader.read();
+        assertEquals("Mustang", first.getAsString(CarEntry.COLUMN_CAR_NAME));
+        assertEquals(Integer.valueOf(25845), first.getAsInteger(CarEntry.COLUMN_CAR_PRICE));
+        assertEquals(Integer.valueOf(3), first.getAsInteger(CarEntry.COLUMN_CAR_QUANTITY));
+        assertEquals("Fast Car Store", first.getAsString(CarEntry.COLUMN_CAR_SUPPLIER));
+        assertEquals("order@fastcarstore.com", first.getAsString(CarEntry.COLUMN_CAR_EMAIL));
+        assertEquals("content://images/1", first.getAsString(CarEntry.COLUMN_CAR_IMAGE));
+
+        ContentValues second = reader.read();
+        assertEquals("Übermobil", second.getAsString(CarEntry.COLUMN_CAR_NAME));
+        assertEquals("Störe", second.getAsString(CarEntry.COLUMN_CAR_SUPPLIER));
+        // An empty string stands for a missing value
+        assertFalse(second.containsKey(CarEntry.COLUMN_CAR_EMAIL));
+
+        // The trailer matches, so the end is reached without an error
+        assertNull(reader.read());
+        assertNull(reader.read());
+        assertEquals(2, reader.getRecordNumber());
+    }
+
+    @Test
+    public void readsEmptyFile() throws IOException {
+        assertNull(reader(new FileBuilder().build()).read());
+    }
+
+    @Test
+    public void skipsUnknownFieldsAtTheEndOfRecords() throws IOException {
+        BinaryCarReader reader = reader(new FileBuilder()
+                .car("Mustang", 25845, 3, "Fast Car Store", "a@b.com", "content://images/1", new byte[]{1, 2, 3})
+                .car("Uno", 9000, 0, "Fiat Store", "c@d.com", "content://images/2")
+                .build());
+
+        assertEquals("content://images/1", reader.read().getAsString(CarEntry.COLUMN_CAR_IMAGE));
+        assertEquals("Uno", reader.read().getAsString(CarEntry.COLUMN_CAR_NAME));
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void rejectsTruncatedRecordAndGoesOn() throws IOException {
+        // The length of the record is right, but its last string claims more bytes than it holds
+        BinaryCarReader reader = reader(new FileBuilder()
+                .record(recordBytes("Mustang", 25845, 3, "Fast Car Store", "a@b.com", ""), 4)
+                .car("Uno", 9000, 0, "Fiat Store", "c@d.com", "content://images/2")
+                .build());
+
+        try {
+            reader.read();
+            fail("A truncated record was read");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Truncated record", e.getMessage());
+        }
+        assertEquals("Uno", reader.read().getAsString(CarEntry.COLUMN_CAR_NAME));
+        assertNull(reader.read());
+        assertEquals(2, reader.getRecordNumber());
+    }
+
+    @Test
+    public void failsOnTruncatedFile() throws IOException {
+        byte[] file = new FileBuilder()
+                .car("Mustang", 25845, 3, "Fast Car Store", "a@b.com", "content://images/1")
+                .build();
+        // Cut in the middle of the trailer
+        BinaryCarReader reader = reader(Arrays.copyOf(file, file.length - 6));
+
+        reader.read();
+        try {
+            reader.read();
+            fail("A truncated file was read to the end");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("truncated"));
+        }
+    }
+
+    @Test
+    public void failsOnChecksumMismatch() throws IOException {
+        byte[] file = new FileBuilder()
+                .car("Mustang", 25845, 3, "Fast Car Store", "a@b.com", "content://images/1")
+                .build();
+        // Change one letter of the name, the record still reads fine
+        file[BinaryFormat.MAGIC.length + 1 + 4 + 2] ^= 0x20;
+        BinaryCarReader reader = reader(file);
+
+        assertEquals("mustang", reader.read().getAsString(CarEntry.COLUMN_CAR_NAME));
+        try {
+            reader.read();
+            fail("A corrupt file was read to the end");
+        } catch (IOException e) {
+            assertEquals("Checksum mismatch, the file is corrupt", e.getMessage());
+        }
+    }
+
+    @Test
+    public void failsOnWrongCountInTrailer() throws IOException {
+        BinaryCarReader reader = reader(new FileBuilder()
+                .car("Mustang", 25845, 3, "Fast Car Store", "a@b.com", "content://images/1")
+                .car("Uno", 9000, 0, "Fiat Store", "c@d.com", "content://images/2")
+                .build(3));
+
+        try {
+            readAll(reader);
+            fail("A file with a wrong count was read to the end");
+        } catch (IOException e) {
+            assertEquals("Expected 3 records, read 2", e.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnInvalidRecordLength() throws IOException {
+        reader(new FileBuilder().record(new byte[0], -5).build()).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnWrongMagic() throws IOException {
+        byte[] file = new FileBuilder().build();
+        file[0] = 'X';
+        reader(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnUnsupportedVersion() throws IOException {
+        byte[] file = new FileBuilder().build();
+        file[BinaryFormat.MAGIC.length] = (byte) (BinaryFormat.VERSION + 1);
+        reader(file);
+    }
+
+    private static BinaryCarReader reader(byte[] file) throws IOException {
+        return new BinaryCarReader(new ByteArrayInputStream(file));
+    }
+
+    private static List<ContentValues> readAll(BinaryCarReader reader) throws IOException {
+        List<ContentValues> cars = new ArrayList<>();
+        ContentValues values;
+        while ((values = reader.read()) != null) {
+            cars.add(values);
+        }
+        return cars;
+    }
+
+    /**
+     * Return the fields of a record, in the order of {@link BinaryFormat}.
+     */
+    private static byte[] recordBytes(String name, int price, int quantity, String supplier,
+                                      String email, String image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, name);
+        out.writeInt(price);
+        out.writeInt(quantity);
+        writeString(out, supplier);
+        writeString(out, email);
+        writeString(out, image);
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a binary file record by record, with a header and a trailer.
+     */
+    private static final class FileBuilder {
+
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mOut = new DataOutputStream(mBytes);
+        private int mCount;
+
+        FileBuilder() throws IOException {
+            mOut.write(BinaryFormat.MAGIC);
+            mOut.writeByte(BinaryFormat.VERSION);
+        }
+
+        FileBuilder car(String name, int price, int quantity, String supplier, String email,
+                        String image) throws IOException {
+            return car(name, price, quantity, supplier, email, image, new byte[0]);
+        }
+
+        /**
+         * Add a car whose record ends with the given extra bytes, like a field of a later version.
+         */
+        FileBuilder car(String name, int price, int quantity, String supplier, String email,
+                        String image, byte[] extra) throws IOException {
+            byte[] fields = recordBytes(name, price, quantity, supplier, email, image);
+            byte[] record = Arrays.copyOf(fields, fields.length + extra.length);
+            System.arraycopy(extra, 0, record, fields.length, extra.length);
+            return record(record, 0);
+        }
+
+        /**
+         * Add a record made of the given bytes, with a length that is off by the given amount.
+         */
+        FileBuilder record(byte[] record, int extraLength) throws IOException {
+            if (extraLength < 0) {
+                mOut.writeInt(extraLength);
+            } else {
+                // The extra length is read as the length of the last string
+                mOut.writeInt(record.length);
+                if (extraLength > 0) {
+                    record = record.clone();
+                    record[record.length - 1] = (byte) extraLength;
+                }
+            }
+            mOut.write(record);
+            mCount++;
+            return this;
+        }
+
+        byte[] build() throws IOException {
+            return build(mCount);
+        }
+
+        /**
+         * Close the file with a trailer giving the given number of records.
+         */
+        byte[] build(long count) throws IOException {
+            mOut.flush();
+            CRC32 crc = new CRC32();
+            crc.update(mBytes.toByteArray());
+            mOut.writeInt(BinaryFormat.END_OF_RECORDS);
+            mOut.writeLong(count);
+            mOut.writeLong(crc.getValue());
+            return mBytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of exporting the cars of the provider through {@link CarExporter}, in both formats.
+ * Run it on a device and look at the logged timing and sizes. The files are deleted at the end.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CarExportBenchmark {
+
+    private static final String LOG_TAG = CarExportBenchmark.class.getSimpleName();
+
+    @Test
+    public void exportAll() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        ContentResolver contentResolver = context.getContentResolver();
+        int expected = countCars(contentResolver);
+        for (CarExporter.Format format : CarExporter.Format.values()) {
+            File file = new File(context.getCacheDir(), "bench_export" + format.extension);
+            File checksumFile = new File(file.getPath() + CarExporter.CHECKSUM_SUFFIX);
+            try {
+                long start = System.nanoTime();
+                CarExporter.Result result = new CarExporter(contentResolver).export(file, format);
+                long exportMillis = (System.nanoTime() - start) / 1000000;
+
+                Log.i(LOG_TAG, "Exported " + result.count + " cars as " + format + " in " + exportMillis
+                        + " ms, " + file.length() + " bytes");
+                assertEquals(expected, result.count);
+                assertTrue(checksumFile.exists());
+                // Only the binary files carry their own checksum
+                assertEquals(format == CarExporter.Format.BINARY, CarImporter.verify(new FileInputStream(file)));
+            } finally {
+                file.delete();
+                checksumFile.delete();
+            }
+        }
+    }
+
+    private static int countCars(ContentResolver contentResolver) {
+        Cursor cursor = contentResolver.query(CarEntry.CONTENT_URI, new String[]{CarEntry._ID},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+import com.edmilson.inventoryapp.data.CarContract.SupplierEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of importing a large CSV file through {@link CarImporter} into the provider. Run it
+ * on a device and look at the logged timing. The imported cars are deleted at the end.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CarImportBenchmark {
+
+    private static final String LOG_TAG = CarImportBenchmark.class.getSimpleName();
+
+    private static final int ROWS = 100000;
+
+    /** Every this many rows, a row with an invalid price is written */
+    private static final int BAD_ROW_EVERY = 1000;
+
+    private static final String SUPPLIER = "Import Benchmark";
+
+    @Test
+    public void importCsv() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        ContentResolver contentResolver = context.getContentResolver();
+        File file = new File(context.getCacheDir(), "bench_import.csv");
+        int badRows = writeCsv(file);
+        try {
+            CarImporter importer = new CarImporter(contentResolver, CarImporter.DEFAULT_BATCH_SIZE,
+                    "file:///car.jpg");
+            long start = System.nanoTime();
+            CarImporter.Result result = importer.importCars(new FileInputStream(file), file.length(), null);
+            long importMillis = (System.nanoTime() - start) / 1000000;
+
+            Log.i(LOG_TAG, "Imported " + result.imported + " cars in " + importMillis + " ms");
+            assertEquals(ROWS - badRows, result.imported);
+            assertEquals(badRows, result.rejected);
+        } finally {
+            file.delete();
+            contentResolver.delete(CarEntry.CONTENT_URI, CarEntry.COLUMN_CAR_SUPPLIER + "=?",
+                    new String[]{SUPPLIER});
+            deleteSupplier(contentResolver);
+        }
+    }
+
+    /**
+     * Write the rows of the benchmark, some of them invalid. Return the number of invalid rows.
+     */
+    private static int writeCsv(File file) throws IOException {
+        int badRows = 0;
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.write("name,price,quantity,supplier,email\n");
+            for (int i = 1; i <= ROWS; i++) {
+                boolean bad = i % BAD_ROW_EVERY == 0;
+                if (bad) {
+                    badRows++;
+                }
+                writer.write("\"Car " + i + ", edition " + i % 7 + "\"," + (bad ? "free" : 20000 + i) + ","
+                        + i % 50 + "," + SUPPLIER + ",order@benchmark.com\n");
+            }
+        } finally {
+            writer.close();
+        }
+        return badRows;
+    }
+
+    private static void deleteSupplier(ContentResolver contentResolver) {
+        Cursor cursor = contentResolver.query(SupplierEntry.CONTENT_URI, new String[]{SupplierEntry._ID},
+                SupplierEntry.COLUMN_SUPPLIER_NAME + "=?", new String[]{SUPPLIER}, null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            if (cursor.moveToFirst()) {
+                contentResolver.delete(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI,
+                        cursor.getLong(0)), null, null);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
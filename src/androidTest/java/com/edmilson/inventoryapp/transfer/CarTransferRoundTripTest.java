@@ -0,0 +1,195 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+
+import com.edmilson.inventoryapp.data.CarContract;
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the cars exported by {@link CarExporter} are imported back by {@link CarImporter}
+ * unchanged, in both formats. The cars are held by {@link FakeCarProvider} rather than the
+ * database, so only the files are tested.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CarTransferRoundTripTest {
+
+    /** More cars than fit in one page of the export, and in one batch of the import */
+    private static final int CAR_COUNT = 1234;
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "round_trip");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        new File(mFile.getPath() + CarExporter.CHECKSUM_SUFFIX).delete();
+    }
+
+    @Test
+    public void csvRoundTripKeepsTheCars() throws IOException {
+        assertRoundTrip(CarExporter.Format.CSV);
+    }
+
+    @Test
+    public void binaryRoundTripKeepsTheCars() throws IOException {
+        assertRoundTrip(CarExporter.Format.BINARY);
+    }
+
+    @Test
+    public void verifiesIntactBinaryFile() throws IOException {
+        export(createCars(), CarExporter.Format.BINARY);
+
+        assertTrue(CarImporter.verify(new FileInputStream(mFile)));
+    }
+
+    @Test
+    public void verifyIgnoresCsvFile() throws IOException {
+        export(createCars(), CarExporter.Format.CSV);
+
+        assertFalse(CarImporter.verify(new FileInputStream(mFile)));
+    }
+
+    @Test
+    public void rejectsChecksumMismatch() throws IOException {
+        export(createCars(), CarExporter.Format.BINARY);
+        // Change the last letter of the last image, right before the trailer of 20 bytes
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            long position = file.length() - 20 - 1;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0x01);
+        } finally {
+            file.close();
+        }
+
+        try {
+            CarImporter.verify(new FileInputStream(mFile));
+            fail("A corrupt file was verified");
+        } catch (IOException e) {
+            assertEquals("Checksum mismatch, the file is corrupt", e.getMessage());
+        }
+    }
+
+    private void assertRoundTrip(CarExporter.Format format) throws IOException {
+        List<ContentValues> cars = createCars();
+        CarExporter.Result exported = export(cars, format);
+        assertEquals(CAR_COUNT, exported.count);
+
+        FakeCarProvider target = new FakeCarProvider(new ArrayList<ContentValues>());
+        CarImporter importer = new CarImporter(resolver(target), CarImporter.DEFAULT_BATCH_SIZE, null);
+        CarImporter.Result imported = importer.importCars(new FileInputStream(mFile), mFile.length(), null);
+
+        assertEquals(CAR_COUNT, imported.imported);
+        assertEquals(0, imported.rejected);
+        assertEquals(cars.size(), target.mCars.size());
+        for (int i = 0; i < cars.size(); i++) {
+            ContentValues expected = cars.get(i);
+            ContentValues actual = target.mCars.get(i);
+            for (String column : CarRecordReader.COLUMNS) {
+                assertEquals("Car " + i + ", " + column,
+                        expected.getAsString(column), actual.getAsString(column));
+            }
+        }
+    }
+
+    private CarExporter.Result export(List<ContentValues> cars, CarExporter.Format format) throws IOException {
+        return new CarExporter(resolver(new FakeCarProvider(cars))).export(mFile, format);
+    }
+
+    /**
+     * Return cars whose values need escaping in CSV, or aren't ASCII.
+     */
+    private static List<ContentValues> createCars() {
+        String[] names = {"Mustang", "Mustang, GT", "The \"Beast\"", "Uno\nFire", "Übermobil 日本"};
+        List<ContentValues> cars = new ArrayList<>();
+        for (int i = 0; i < CAR_COUNT; i++) {
+            ContentValues values = new ContentValues();
+            values.put(CarEntry._ID, (long) i + 1);
+            values.put(CarEntry.COLUMN_CAR_NAME, names[i % names.length] + " " + i);
+            values.put(CarEntry.COLUMN_CAR_PRICE, i * 100);
+            values.put(CarEntry.COLUMN_CAR_QUANTITY, i % 7);
+            values.put(CarEntry.COLUMN_CAR_SUPPLIER, i % 2 == 0 ? "Fast Car Store" : "Störe, \"Fiat\"");
+            values.put(CarEntry.COLUMN_CAR_EMAIL, "supplier" + i % 3 + "@example.com");
+            values.put(CarEntry.COLUMN_CAR_IMAGE, "content://images/" + i);
+            cars.add(values);
+        }
+        return cars;
+    }
+
+    private static MockContentResolver resolver(FakeCarProvider provider) {
+        MockContentResolver resolver = new MockContentResolver();
+        resolver.addProvider(CarContract.CONTENT_AUTHORITY, provider);
+        return resolver;
+    }
+
+    /**
+     * Holds cars in memory, answering the page queries of the export and the bulk inserts of
+     * the import.
+     */
+    private static final class FakeCarProvider extends MockContentProvider {
+
+        private final List<ContentValues> mCars;
+
+        FakeCarProvider(List<ContentValues> cars) {
+            mCars = cars;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                            String sortOrder) {
+            long after = Long.parseLong(uri.getQueryParameter(CarContract.QUERY_PARAMETER_AFTER));
+            int limit = Integer.parseInt(uri.getQueryParameter(CarContract.QUERY_PARAMETER_LIMIT));
+            MatrixCursor cursor = new MatrixCursor(projection);
+            for (ContentValues car : mCars) {
+                if (car.getAsLong(CarEntry._ID) <= after) {
+                    continue;
+                }
+                if (cursor.getCount() == limit) {
+                    break;
+                }
+                Object[] row = new Object[projection.length];
+                for (int i = 0; i < projection.length; i++) {
+                    row[i] = car.get(projection[i]);
+                }
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+
+        @Override
+        public int bulkInsert(Uri uri, ContentValues[] values) {
+            assertEquals(CarEntry.CONTENT_URI, uri);
+            for (ContentValues car : values) {
+                mCars.add(new ContentValues(car));
+            }
+            return values.length;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.content.ContentValues;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the CSV parsing of {@link CsvCarReader}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CsvCarReaderTest {
+
+    private static final String HEADER = "name,price,quantity,supplier,email,image\n";
+
+    @Test
+    public void readsPlainRecords() throws IOException {
+        CsvCarReader reader = reader(HEADER
+                + "Mustang,25845,3,Fast Car Store,order@fastcarstore.com,content://images/1\n"
+                + "Uno,9000,0,Fiat Store,sales@fiat.com,content://images/2");
+
+        ContentValues first = reader.read();
+        assertEquals("Mustang", first.getAsString(CarEntry.COLUMN_CAR_NAME));
+        assertEquals(Integer.valueOf(25845), first.getAsInteger(CarEntry.COLUMN_CAR_PRICE));
+        assertEquals(Integer.valueOf(3), first.getAsInteger(CarEntry.COLUMN_CAR_QUANTITY));
+        assertEquals("Fast Car Store", first.getAsString(CarEntry.COLUMN_CAR_SUPPLIER));
+        assertEquals("order@fastcarstore.com", first.getAsString(CarEntry.COLUMN_CAR_EMAIL));
+        assertEquals("content://images/1", first.getAsString(CarEntry.COLUMN_CAR_IMAGE));
+
+        // The last line doesn't need a line break
+        ContentValues second = reader.read();
+        assertEquals("content://images/2", second.getAsString(CarEntry.COLUMN_CAR_IMAGE));
+        assertEquals(2, reader.getRecordNumber());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void readsCommasAndLineBreaksInQuotedFields() throws IOException {
+        CsvCarReader reader = reader(HEADER
+                + "\"Mustang, GT\",25845,3,\"Fast\nCar Store\",order@fastcarstore.com,content://images/1\n");
+
+        ContentValues values = reader.read();
+        assertEquals("Mustang, GT", values.getAsString(CarEntry.COLUMN_CAR_NAME));
+        assertEquals("Fast\nCar Store", values.getAsString(CarEntry.COLUMN_CAR_SUPPLIER));
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void readsDoubledQuotesAsOneQuote() throws IOException {
+        CsvCarReader reader = reader(HEADER
+                + "\"The \"\"Beast\"\"\",25845,3,\"\"\"Quoted\"\" Store\",a@b.com,content://images/1\n");
+
+        ContentValues values = reader.read();
+        assertEquals("The \"Beast\"", values.getAsString(CarEntry.COLUMN_CAR_NAME));
+        assertEquals("\"Quoted\" Store", values.getAsString(CarEntry.COLUMN_CAR_SUPPLIER));
+    }
+
+    @Test
+    public void readsCrlfLineBreaks() throws IOException {
+        CsvCarReader reader = reader(HEADER.replace("\n", "\r\n")
+                + "Mustang,25845,3,Fast Car Store,a@b.com,content://images/1\r\n"
+                + "\"Uno\r\nFire\",9000,0,Fiat Store,c@d.com,content://images/2\r\n");
+
+        assertEquals("content://images/1", reader.read().getAsString(CarEntry.COLUMN_CAR_IMAGE));
+        // Inside quotes the line break is part of the value
+        ContentValues second = reader.read();
+        assertEquals("Uno\r\nFire", second.getAsString(CarEntry.COLUMN_CAR_NAME));
+        assertEquals("content://images/2", second.getAsString(CarEntry.COLUMN_CAR_IMAGE));
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void skipsTheByteOrderMark() throws IOException {
+        CsvCarReader reader = reader("\uFEFF" + HEADER
+                + "Mustang,25845,3,Fast Car Store,a@b.com,content://images/1\n");
+
+        assertEquals("Mustang", reader.read().getAsString(CarEntry.COLUMN_CAR_NAME));
+    }
+
+    @Test
+    public void skipsBlankLinesAndUnknownColumns() throws IOException {
+        CsvCarReader reader = reader("Name, Color ,price,quantity,supplier,email,image\n"
+                + "\n"
+                + "Mustang,red,25845,3,Fast Car Store,a@b.com,content://images/1\n"
+                + "\r\n");
+
+        ContentValues values = reader.read();
+        assertEquals("Mustang", values.getAsString(CarEntry.COLUMN_CAR_NAME));
+        assertFalse(values.containsKey("color"));
+        assertEquals(6, values.size());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void rejectsWrongFieldCountAndGoesOn() throws IOException {
+        CsvCarReader reader = reader(HEADER
+                + "Mustang,25845,3,Fast Car Store,a@b.com\n"
+                + "Uno,9000,0,Fiat Store,c@d.com,content://images/2,extra\n"
+                + "Golf,18000,2,VW Store,e@f.com,content://images/3\n");
+
+        try {
+            reader.read();
+            fail("A line with too few fields was read");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Expected 6 fields, found 5", e.getMessage());
+        }
+        assertEquals(1, reader.getRecordNumber());
+        try {
+            reader.read();
+            fail("A line with too many fields was read");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Expected 6 fields, found 7", e.getMessage());
+        }
+
+        // The bad lines are skipped, the next one is read
+        assertEquals("Golf", reader.read().getAsString(CarEntry.COLUMN_CAR_NAME));
+        assertEquals(3, reader.getRecordNumber());
+    }
+
+    @Test
+    public void rejectsInvalidNumbers() throws IOException {
+        CsvCarReader reader = reader(HEADER
+                + "Mustang,cheap,3,Fast Car Store,a@b.com,content://images/1\n");
+
+        try {
+            reader.read();
+            fail("An invalid price was read");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid price: cheap", e.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnUnterminatedQuote() throws IOException {
+        reader(HEADER + "\"Mustang,25845,3,Fast Car Store,a@b.com,content://images/1\n").read();
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnEmptyFile() throws IOException {
+        reader("").read();
+    }
+
+    private static CsvCarReader reader(String text) {
+        return new CsvCarReader(new StringReader(text));
+    }
+}
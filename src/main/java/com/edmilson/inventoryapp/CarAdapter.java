@@ -0,0 +1,211 @@
+package com.edmilson.inventoryapp;
+
+import android.content.ContentProviderResult;
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageButton;
+import android.widget.ImageView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.edmilson.inventoryapp.data.Car;
+import com.edmilson.inventoryapp.data.CarWriteQueue;
+import com.edmilson.inventoryapp.image.ImageLoader;
+
+import java.util.List;
+
+/**
+ * {@link CarAdapter} is a RecyclerView adapter over an immutable list of {@link Car}s.
+ * When a new list is submitted, the difference with the current one is computed on a
+ * background thread, and only the rows that actually changed are bound again.
+ */
+public class CarAdapter extends ListAdapter<Car, CarAdapter.CarViewHolder> {
+
+    /** Payload of a change where only the quantity of the car is different */
+    private static final Object PAYLOAD_QUANTITY = new Object();
+
+    /**
+     * Tells which cars of two lists are the same row, and whether their content changed.
+     */
+    private static final DiffUtil.ItemCallback<Car> DIFF_CALLBACK = new DiffUtil.ItemCallback<Car>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Car oldCar, @NonNull Car newCar) {
+            return oldCar.getId() == newCar.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Car oldCar, @NonNull Car newCar) {
+            return oldCar.equals(newCar);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Car oldCar, @NonNull Car newCar) {
+            // A sale only changes the quantity, so there is no need to bind the whole row again
+            if (oldCar.getQuantity() != newCar.getQuantity() && oldCar.equalsIgnoringQuantity(newCar)) {
+                return PAYLOAD_QUANTITY;
+            }
+            return null;
+        }
+    };
+
+    /**
+     * Interface for receiving a click on a car of the list.
+     */
+    public interface OnCarClickListener {
+        void onCarClick(long id);
+    }
+
+    private final Context mContext;
+    private final OnCarClickListener mOnCarClickListener;
+
+    /** Loads the car pictures in the background, scaled down to the size of the row */
+    private final ImageLoader mImageLoader;
+
+    /**
+     * Single click listener shared by all the rows. The views it is set on are tagged with
+     * their {@link CarViewHolder}, which knows the ID of the car currently bound to the row.
+     */
+    private final View.OnClickListener mClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            CarViewHolder holder = (CarViewHolder) v.getTag();
+            long id = holder.getItemId();
+            if (id == RecyclerView.NO_ID) {
+                return;
+            }
+            if (v.getId() == R.id.buy_image_button) {
+                // Handle the sell button click on the main screen
+                sellCar(id);
+            } else {
+                // Open the editor when the row is clicked
+                mOnCarClickListener.onCarClick(id);
+            }
+        }
+    };
+
+    /**
+     * Constructs a new {@link CarAdapter}.
+     *
+     * @param context  The context
+     * @param listener Called when a car of the list is clicked
+     */
+    public CarAdapter(Context context, OnCarClickListener listener) {
+        super(DIFF_CALLBACK);
+        mContext = context;
+        mOnCarClickListener = listener;
+        mImageLoader = ImageLoader.getInstance(context);
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
+    }
+
+    /**
+     * Makes a new blank list item view. No data is set (or bound) to the views yet.
+     */
+    @NonNull
+    @Override
+    public CarViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        // Inflate a list item view using the layout specified in list_item.xml
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+        return new CarViewHolder(view);
+    }
+
+    /**
+     * Bind the given car to the list item layout. For example, the name for the current car
+     * can be set on the name TextView in the list item layout.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull CarViewHolder holder, int position) {
+        Car car = getItem(position);
+
+        // Update the TextViews and the ImageView with the attributes for the current car
+        holder.nameTextView.setText(car.getName());
+        holder.quantityTextView.setText(Integer.toString(car.getQuantity()));
+        holder.priceTextView.setText(Integer.toString(car.getPrice()));
+
+        // Decode the picture off the main thread, a placeholder is shown meanwhile. If the row
+        // already shows this picture there is nothing to do.
+        String image = car.getListImage();
+        if (image == null || !image.equals(holder.boundImage)) {
+            holder.boundImage = image;
+            mImageLoader.load(image, holder.carImageView);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull CarViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.size() == 1 && payloads.get(0) == PAYLOAD_QUANTITY) {
+            // Only the quantity changed, leave the rest of the row alone
+            holder.quantityTextView.setText(Integer.toString(getItem(position).getQuantity()));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    /**
+     * The row has left the screen and goes back to the pool. Cancel its pending picture so it
+     * isn't decoded for nothing, and forget which picture it had: a cancelled load left the
+     * placeholder, so the picture has to be loaded again when the row is bound.
+     */
+    @Override
+    public void onViewRecycled(@NonNull CarViewHolder holder) {
+        mImageLoader.cancel(holder.carImageView);
+        holder.boundImage = null;
+    }
+
+    /**
+     * Sell one unit of the car with the given ID in the background. The provider checks the
+     * stock and decrements it in one go, the row follows when the list is reloaded.
+     */
+    private void sellCar(long id) {
+        final Context appContext = mContext.getApplicationContext();
+        CarWriteQueue.getInstance(mContext).sell(id, new CarWriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(ContentProviderResult result, Exception error) {
+                if (result == null || result.count == null || result.count == 0) {
+                    Toast.makeText(appContext, appContext.getString(R.string.error_message_out_of_stock),
+                            Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+
+    /**
+     * Keeps the views of a list item, so they are only looked up once.
+     */
+    class CarViewHolder extends RecyclerView.ViewHolder {
+
+        final TextView nameTextView;
+        final TextView quantityTextView;
+        final TextView priceTextView;
+        final ImageView carImageView;
+
+        /** Uri string of the picture loaded into {@link #carImageView} */
+        String boundImage;
+
+        CarViewHolder(View view) {
+            super(view);
+            // Find individual views that we want to modify in the list item layout
+            nameTextView = view.findViewById(R.id.name_text_view);
+            quantityTextView = view.findViewById(R.id.quantity_text_view);
+            priceTextView = view.findViewById(R.id.price_text_view);
+            carImageView = view.findViewById(R.id.car_image_view_in_list_view);
+            ImageButton buyImageButton = view.findViewById(R.id.buy_image_button);
+
+            // Both the row and its sell button go through the shared click listener
+            view.setTag(this);
+            view.setOnClickListener(mClickListener);
+            buyImageButton.setTag(this);
+            buyImageButton.setOnClickListener(mClickListener);
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.edmilson.inventoryapp;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.AsyncTaskLoader;
+import android.text.TextUtils;
+
+import com.edmilson.inventoryapp.data.Car;
+import com.edmilson.inventoryapp.data.CarChanges;
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Loader that reads the cars page by page into an immutable {@link Snapshot}, using the ID of
+ * the last car of a page as the start of the next one.
+ * <p>
+ * The first page is loaded when the loader starts. More pages are only read when asked for
+ * through {@link #loadNextPage()}, and the cars already loaded are kept meanwhile.
+ * <p>
+ * The loader observes {@link CarEntry#CHANGES_URI}, which tells which cars changed. Changes to
+ * cars that aren't loaded are ignored, and the loaded cars that changed are read again one by
+ * one. All the pages are only read again when the cars that changed aren't known.
+ * <p>
+ * When given a search text, the loader reads the best {@link #SEARCH_LIMIT} matches of the
+ * full-text search instead, in a single query.
+ */
+public class CarListLoader extends AsyncTaskLoader<CarListLoader.Snapshot> {
+
+    /** Number of cars read per page */
+    public static final int PAGE_SIZE = 50;
+
+    /** Maximum number of cars read for a search */
+    public static final int SEARCH_LIMIT = 200;
+
+    /**
+     * Immutable list of the cars loaded so far.
+     */
+    public static final class Snapshot {
+
+        /** The cars, sorted by ID, or by relevance for a search */
+        public final List<Car> cars;
+
+        /** Number of pages read to get these cars */
+        final int pageCount;
+
+        /** ID of the last car read, where the next page starts */
+        final long lastId;
+
+        /** False once the last page has been read */
+        final boolean hasMore;
+
+        /**
+         * What the load of this snapshot took from the loader: whether it read all the cars
+         * again, and which changes it applied. Given back if the load is canceled.
+         */
+        boolean readAll;
+        List<CarChanges> appliedChanges = Collections.emptyList();
+
+        Snapshot(List<Car> cars, int pageCount, long lastId, boolean hasMore) {
+            this.cars = Collections.unmodifiableList(cars);
+            this.pageCount = pageCount;
+            this.lastId = lastId;
+            this.hasMore = hasMore;
+        }
+
+        /**
+         * Return true if the car with the given ID is in this snapshot, whose cars are sorted by ID.
+         */
+        boolean contains(long id) {
+            int low = 0;
+            int high = cars.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleId = cars.get(middle).getId();
+                if (middleId < id) {
+                    low = middle + 1;
+                } else if (middleId > id) {
+                    high = middle - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** Sorts the cars by ID */
+    private static final Comparator<Car> BY_ID = new Comparator<Car>() {
+        @Override
+        public int compare(Car a, Car b) {
+            return a.getId() < b.getId() ? -1 : (a.getId() == b.getId() ? 0 : 1);
+        }
+    };
+
+    private final String[] mProjection;
+
+    /** Text to search for, or null to list all the cars */
+    private final String mQuery;
+    /** Receives the descriptions of the changes to the cars */
+    private final ContentObserver mObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onCarsChanged(CarChanges.fromUri(uri));
+        }
+    };
+
+    /** The snapshot delivered to the client */
+    private Snapshot mSnapshot;
+
+    /** Number of pages the client wants to see */
+    private int mPageCount = 1;
+
+    /** True when the cars changed since they were read, so all the pages must be read again */
+    private boolean mStale = true;
+
+    /** Changes to the loaded cars since they were read, to apply to the snapshot */
+    private List<CarChanges> mPendingChanges = new ArrayList<>();
+
+    private boolean mObserving;
+
+    /**
+     * @param projection the columns to read, it must contain {@link CarEntry#_ID}
+     */
+    public CarListLoader(Context context, String[] projection) {
+        this(context, projection, null);
+    }
+
+    /**
+     * @param projection the columns to read, it must contain {@link CarEntry#_ID}
+     * @param query      text to search for in the name and supplier of the cars, or null
+     *                   (or empty) to list all the cars
+     */
+    public CarListLoader(Context context, String[] projection, String query) {
+        super(context);
+        mProjection = projection;
+        mQuery = query == null || query.trim().isEmpty() ? null : query.trim();
+    }
+
+    /**
+     * Read one more page, if there is one and it isn't being read yet.
+     */
+    public void loadNextPage() {
+        Snapshot snapshot = mSnapshot;
+        synchronized (this) {
+            if (snapshot == null || !snapshot.hasMore || mPageCount > snapshot.pageCount) {
+                return;
+            }
+            mPageCount = snapshot.pageCount + 1;
+        }
+        forceLoad();
+    }
+
+    @Override
+    public Snapshot loadInBackground() {
+        if (mQuery != null) {
+            return searchInBackground();
+        }
+
+        // Find out whether the cars already delivered can be kept
+        List<Car> cars = new ArrayList<>();
+        List<CarChanges> changes;
+        boolean readAll;
+        int wantedPages;
+        int pageCount = 0;
+        long lastId = 0;
+        boolean hasMore = true;
+        synchronized (this) {
+            wantedPages = mPageCount;
+            Snapshot delivered = mSnapshot;
+            readAll = mStale || delivered == null;
+            if (!readAll) {
+                cars.addAll(delivered.cars);
+                pageCount = delivered.pageCount;
+                lastId = delivered.lastId;
+                hasMore = delivered.hasMore;
+            }
+            changes = mPendingChanges;
+            mPendingChanges = new ArrayList<>();
+            mStale = false;
+        }
+
+        // Bring the cars kept up to date with the changes made since they were read
+        if (!readAll && !changes.isEmpty()) {
+            lastId = applyChanges(cars, changes, lastId, hasMore);
+        }
+
+        // Then read the missing pages, each one starting after the last car of the previous one
+        while (hasMore && pageCount < wantedPages) {
+            if (isLoadInBackgroundCanceled()) {
+                break;
+            }
+            Cursor cursor = getContext().getContentResolver().query(
+                    CarEntry.buildPageUri(lastId, PAGE_SIZE), mProjection, null, null, null);
+            if (cursor == null) {
+                break;
+            }
+            try {
+                // Resolve the column indexes once for the whole page
+                Car.Columns columns = new Car.Columns(cursor);
+                while (cursor.moveToNext()) {
+                    Car car = Car.fromCursor(cursor, columns);
+                    cars.add(car);
+                    lastId = car.getId();
+                }
+                hasMore = cursor.getCount() == PAGE_SIZE;
+            } finally {
+                cursor.close();
+            }
+            pageCount++;
+        }
+        Snapshot snapshot = new Snapshot(cars, pageCount, lastId, hasMore);
+        snapshot.readAll = readAll;
+        snapshot.appliedChanges = changes;
+        return snapshot;
+    }
+
+    /**
+     * Apply the changes to the loaded cars: the deleted ones are removed, and the updated and
+     * inserted ones are read again. Return the ID of the last car loaded.
+     */
+    private long applyChanges(List<Car> cars, List<CarChanges> changes, long lastId, boolean hasMore) {
+        Set<Long> loaded = new HashSet<>();
+        for (Car car : cars) {
+            loaded.add(car.getId());
+        }
+        Set<Long> deleted = new HashSet<>();
+        Set<Long> toRead = new TreeSet<>();
+        for (CarChanges change : changes) {
+            for (long id : change.getUpdated()) {
+                if (loaded.contains(id)) {
+                    toRead.add(id);
+                }
+            }
+            // New cars come with the next page, unless the last one is already loaded
+            for (long id : change.getInserted()) {
+                if (!hasMore || id <= lastId) {
+                    toRead.add(id);
+                }
+            }
+            deleted.addAll(change.getDeleted());
+        }
+        toRead.removeAll(deleted);
+
+        Map<Long, Car> fresh = readCars(toRead);
+        List<Car> patched = new ArrayList<>(cars.size() + fresh.size());
+        for (Car car : cars) {
+            long id = car.getId();
+            if (deleted.contains(id)) {
+                continue;
+            }
+            if (toRead.contains(id)) {
+                // Read again, unless it was deleted in the meantime
+                Car freshCar = fresh.remove(id);
+                if (freshCar != null) {
+                    patched.add(freshCar);
+                }
+            } else {
+                patched.add(car);
+            }
+        }
+        // What is left are the new cars
+        if (!fresh.isEmpty()) {
+            patched.addAll(fresh.values());
+            Collections.sort(patched, BY_ID);
+            if (!hasMore) {
+                lastId = patched.get(patched.size() - 1).getId();
+            }
+        }
+        cars.clear();
+        cars.addAll(patched);
+        return lastId;
+    }
+
+    /**
+     * Read the cars with the given IDs, by ID.
+     */
+    private Map<Long, Car> readCars(Set<Long> ids) {
+        Map<Long, Car> cars = new HashMap<>();
+        if (ids.isEmpty()) {
+            return cars;
+        }
+        String[] selectionArgs = new String[ids.size()];
+        int i = 0;
+        for (long id : ids) {
+            selectionArgs[i++] = String.valueOf(id);
+        }
+        String selection = CarEntry._ID + " IN (" + TextUtils.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        Cursor cursor = getContext().getContentResolver().query(
+                CarEntry.CONTENT_URI, mProjection, selection, selectionArgs, null);
+        if (cursor == null) {
+            return cars;
+        }
+        try {
+            Car.Columns columns = new Car.Columns(cursor);
+            while (cursor.moveToNext()) {
+                Car car = Car.fromCursor(cursor, columns);
+                cars.put(car.getId(), car);
+            }
+        } finally {
+            cursor.close();
+        }
+        return cars;
+    }
+
+    /**
+     * Read the best matches of the search. They all come in one page, so there is never
+     * another one to load.
+     */
+    private Snapshot searchInBackground() {
+        synchronized (this) {
+            mStale = false;
+        }
+        List<Car> cars = new ArrayList<>();
+        Cursor cursor = getContext().getContentResolver().query(
+                CarEntry.buildSearchUri(mQuery, SEARCH_LIMIT), mProjection, null, null, null);
+        if (cursor != null) {
+            try {
+                Car.Columns columns = new Car.Columns(cursor);
+                while (cursor.moveToNext()) {
+                    cars.add(Car.fromCursor(cursor, columns));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        Snapshot snapshot = new Snapshot(cars, 1, 0, false);
+        snapshot.readAll = true;
+        return snapshot;
+    }
+
+    /**
+     * Called when a load is canceled, e.g. because the cars changed again. What it took from
+     * the loader is given back, so the next load doesn't miss it.
+     */
+    @Override
+    public void onCanceled(Snapshot snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        synchronized (this) {
+            if (snapshot.readAll) {
+                mStale = true;
+            }
+            mPendingChanges.addAll(0, snapshot.appliedChanges);
+        }
+    }
+
+    @Override
+    public void deliverResult(Snapshot snapshot) {
+        if (isReset()) {
+            return;
+        }
+        mSnapshot = snapshot;
+        if (isStarted()) {
+            super.deliverResult(snapshot);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            getContext().getContentResolver().registerContentObserver(CarEntry.CHANGES_URI, false, mObserver);
+            mObserving = true;
+        }
+        if (mSnapshot != null) {
+            deliverResult(mSnapshot);
+        }
+        if (takeContentChanged() || mSnapshot == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    /**
+     * Called on the main thread when cars changed. Only reload if the changes concern the cars
+     * of the snapshot: an update or a deletion of a car that isn't loaded, or a new car which
+     * will come with a page that isn't loaded yet, don't show.
+     */
+    private void onCarsChanged(CarChanges changes) {
+        Snapshot snapshot = mSnapshot;
+        if (mQuery == null && snapshot != null && !changes.isAll() && !concerns(changes, snapshot)) {
+            return;
+        }
+        synchronized (this) {
+            if (changes.isAll() || mQuery != null) {
+                mStale = true;
+            } else {
+                mPendingChanges.add(changes);
+            }
+        }
+        onContentChanged();
+    }
+
+    private static boolean concerns(CarChanges changes, Snapshot snapshot) {
+        for (long id : changes.getUpdated()) {
+            if (snapshot.contains(id)) {
+                return true;
+            }
+        }
+        for (long id : changes.getDeleted()) {
+            if (snapshot.contains(id)) {
+                return true;
+            }
+        }
+        for (long id : changes.getInserted()) {
+            if (!snapshot.hasMore || id <= snapshot.lastId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+
+        // Ensure the loader is stopped
+        onStopLoading();
+
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+        mSnapshot = null;
+        synchronized (this) {
+            mPageCount = 1;
+            mStale = true;
+            mPendingChanges = new ArrayList<>();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.edmilson.inventoryapp;
 
+import android.arch.lifecycle.Lifecycle;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.database.Cursor;
@@ -19,6 +22,7 @@ import android.support.v4.content.FileProvider;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
@@ -28,9 +32,15 @@ import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import com.edmilson.inventoryapp.data.Car;
+import com.edmilson.inventoryapp.data.CarConflictException;
 import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+import com.edmilson.inventoryapp.data.CarWriteQueue;
+import com.edmilson.inventoryapp.image.ImageLoader;
+import com.edmilson.inventoryapp.image.ThumbnailGenerator;
 
 import java.io.File;
 import java.io.IOException;
@@ -83,6 +93,14 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
      * Declaration of mCarImageView to show a car picture
      */
     private ImageView mCarImageView;
+    /**
+     * Loads the car picture in the background, through the shared picture cache
+     */
+    private ImageLoader mImageLoader;
+    /**
+     * Writes the list thumbnail and the editor rendition of a picture just taken
+     */
+    private ThumbnailGenerator mThumbnailGenerator;
     /**
      * RelativeLayout to handle the car image
      */
@@ -92,10 +110,39 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
      * Image Uri and ImageView of the car
      */
     private Uri mImageUri;
+    /**
+     * Uris of the list thumbnail and the editor rendition of the car image,
+     * null while they are not available
+     */
+    private Uri mThumbnailUri;
+    private Uri mEditorImageUri;
+    /**
+     * Picture just taken whose renditions are still being written, or null
+     */
+    private File mPendingRenditions;
     /**
      * Content URI for the existing car (null if it's a new car)
      */
     private Uri mCurrentCarUri;
+    /**
+     * Version of the existing car the fields were filled with (-1 until it is loaded). The car
+     * is only saved if it still has this version, so changes made meanwhile aren't overwritten.
+     */
+    private long mCurrentCarVersion = -1;
+    /**
+     * The car as it was last loaded, to tell which fields changed since and which ones the user
+     * edited. Null until the car is loaded.
+     */
+    private Car mLoadedCar;
+    /**
+     * True once the car was changed elsewhere in a field the user edited. The version isn't
+     * moved forward anymore, so saving reports the conflict.
+     */
+    private boolean mLoadConflict = false;
+    /**
+     * Uri string of the picture shown, so it isn't loaded again if it didn't change
+     */
+    private String mShownImage;
     /**
      * Boolean flag that keeps track of whether the car has been edited (true) or not (false)
      */
@@ -142,6 +189,8 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         Button minusButton = findViewById(R.id.minus_button);
         Button makeOrderButton = findViewById(R.id.make_order_button);
         mCarImageView = findViewById(R.id.car_image_view);
+        mImageLoader = ImageLoader.getInstance(this);
+        mThumbnailGenerator = new ThumbnailGenerator(this);
         addCarImageLayout = findViewById(R.id.addImage_layout);
         addPictureImageView = findViewById(R.id.add_picture_image_view);
 
@@ -300,7 +349,13 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             File imgFile = new File(pictureFilePath);
             if (imgFile.exists()) {
                 mImageUri = Uri.fromFile(imgFile);
-                mCarImageView.setImageURI(mImageUri);
+                mShownImage = mImageUri.toString();
+                mImageLoader.load(mShownImage, mCarImageView);
+                // Write the smaller renditions in the background, so the list and the editor
+                // never have to decode the full size picture again
+                mThumbnailUri = null;
+                mEditorImageUri = null;
+                generateRenditions(imgFile);
                 // Change the click image source and change it's position
                 addPictureImageView.setImageResource(R.drawable.ic_pencil_grey600_48dp);
                 RelativeLayout.LayoutParams params = (RelativeLayout.LayoutParams) addPictureImageView.getLayoutParams();
@@ -314,6 +369,36 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         }
     }
 
+    /**
+     * Write the thumbnail and the editor rendition of the picture just taken. If the user took
+     * another picture meanwhile the result is ignored.
+     */
+    private void generateRenditions(final File imgFile) {
+        final Uri imageUri = Uri.fromFile(imgFile);
+        mPendingRenditions = imgFile;
+        mThumbnailGenerator.generate(imgFile, new ThumbnailGenerator.Callback() {
+            @Override
+            public void onRenditionsReady(ThumbnailGenerator.Renditions renditions) {
+                if (renditions == null || isFinishing() || !imageUri.equals(mImageUri)) {
+                    return;
+                }
+                mThumbnailUri = renditions.thumbnailUri;
+                mEditorImageUri = renditions.editorUri;
+                mPendingRenditions = null;
+            }
+        });
+    }
+
+    /**
+     * If the car was just saved without the renditions of its picture because they were still
+     * being written, have them added to the car once they are, in the background.
+     */
+    private void updatePendingRenditions() {
+        if (mPendingRenditions != null && Uri.fromFile(mPendingRenditions).equals(mImageUri)) {
+            mThumbnailGenerator.updateCars(mPendingRenditions);
+        }
+    }
+
     /**
      * Get user input from editor and save new car into database
      */
@@ -339,45 +424,102 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         values.put(CarEntry.COLUMN_CAR_SUPPLIER, mSupplierString);
         values.put(CarEntry.COLUMN_CAR_EMAIL, mEmailString);
         values.put(CarEntry.COLUMN_CAR_IMAGE, mImageUri.toString());
+        // The renditions are null if they are still being written, readers then fall back on
+        // the original picture
+        values.put(CarEntry.COLUMN_CAR_THUMBNAIL, mThumbnailUri == null ? null : mThumbnailUri.toString());
+        values.put(CarEntry.COLUMN_CAR_EDITOR_IMAGE, mEditorImageUri == null ? null : mEditorImageUri.toString());
 
         // Determine if this is a new or existing car by checking if mCurrentCarUri is null or not
-        if (mCurrentCarUri == null) {
-            // This is a NEW car, so insert a new car into the provider,
-            // returning the content URI for the new car.
-            Uri newUri = getContentResolver().insert(CarEntry.CONTENT_URI, values);
-
-            // Show a toast message depending on whether or not the insertion was successful.
-            if (newUri == null) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.editor_insert_car_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_insert_car_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
-        } else {
-            // Otherwise this is an EXISTING car, so update the car with content URI: mCurrentCarUri
-            // and pass in the new ContentValues. Pass in null for the selection and selection args
-            // because mCurrentCarUri will already identify the correct row in the database that
-            // we want to modify.
-            int rowsAffected = getContentResolver().update(mCurrentCarUri, values, null, null);
-
-            // Show a toast message depending on whether or not the update was successful.
-            if (rowsAffected == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(this, getString(R.string.editor_update_car_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the update was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_update_car_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+        if (mCurrentCarUri != null) {
+            // This is an EXISTING car: the activity stays open until the update is done, so
+            // the user can still decide what to do if the car changed meanwhile
+            Uri updateUri = mCurrentCarVersion < 0 ? mCurrentCarUri
+                    : CarEntry.buildVersionedUri(mCurrentCarUri, mCurrentCarVersion);
+            updateCar(updateUri, values);
+            return;
         }
+
+        // This is a NEW car, so insert a new car into the provider, getting back the content
+        // URI for the new car. The write runs in the background and the activity doesn't wait
+        // for it: the outcome is shown with the application context, which outlives the editor
+        final Context appContext = getApplicationContext();
+        CarWriteQueue.getInstance(this).insert(values, new CarWriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(ContentProviderResult result, Exception error) {
+                // Show a toast message depending on whether or not the insertion was successful.
+                // If there is no content URI, then there was an error with insertion.
+                boolean inserted = result != null && result.uri != null;
+                showToast(appContext, inserted ? R.string.editor_insert_car_successful
+                        : R.string.editor_insert_car_failed);
+            }
+        });
+        updatePendingRenditions();
         // Exit activity
         finish();
     }
 
+    /**
+     * Update the existing car through the given URI. If it changed since it was loaded, the user
+     * is asked whether to overwrite it, otherwise the activity is closed.
+     */
+    private void updateCar(Uri updateUri, final ContentValues values) {
+        final Context appContext = getApplicationContext();
+        // Pass in the new ContentValues. The URI already identifies the correct row in the
+        // database that we want to modify.
+        CarWriteQueue.getInstance(this).update(updateUri, values, new CarWriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(ContentProviderResult result, Exception error) {
+                // The dialog needs the editor on screen, if it's gone the update just failed
+                if (error instanceof CarConflictException
+                        && getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+                    showConflictDialog(values);
+                    return;
+                }
+                // Show a toast message depending on whether or not the update was successful.
+                // If no rows were affected, then there was an error with the update.
+                boolean updated = result != null && result.count != null && result.count != 0;
+                showToast(appContext, updated ? R.string.editor_update_car_successful
+                        : R.string.editor_update_car_failed);
+                // Exit activity
+                finish();
+            }
+        });
+        updatePendingRenditions();
+    }
+
+    /**
+     * Show a dialog telling the user the car changed since it was loaded, and let them either
+     * save their values over it or reload it.
+     */
+    private void showConflictDialog(final ContentValues values) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setMessage(R.string.editor_conflict_dialog_msg);
+        builder.setPositiveButton(R.string.overwrite, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                // User clicked the "Overwrite" button, so save without checking the version
+                updateCar(mCurrentCarUri, values);
+            }
+        });
+        builder.setNegativeButton(R.string.reload, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                // User clicked the "Reload" button, so fill the fields with the car as it is now
+                mCarHasChanged = false;
+                mChangingCarImage = false;
+                mLoadedCar = null;
+                mLoadConflict = false;
+                getSupportLoaderManager().restartLoader(EXISTING_CAR_LOADER, null, EditorActivity.this);
+            }
+        });
+
+        // Create and show the AlertDialog
+        AlertDialog alertDialog = builder.create();
+        alertDialog.show();
+    }
+
+    private static void showToast(Context context, int messageId) {
+        Toast.makeText(context, context.getString(messageId), Toast.LENGTH_SHORT).show();
+    }
+
     /**
      * This method is called to check if any of the input values is empty and set an error message
      * to the TextInputLayout
@@ -533,7 +675,10 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 CarEntry.COLUMN_CAR_QUANTITY,
                 CarEntry.COLUMN_CAR_SUPPLIER,
                 CarEntry.COLUMN_CAR_EMAIL,
-                CarEntry.COLUMN_CAR_IMAGE};
+                CarEntry.COLUMN_CAR_IMAGE,
+                CarEntry.COLUMN_CAR_THUMBNAIL,
+                CarEntry.COLUMN_CAR_EDITOR_IMAGE,
+                CarEntry.COLUMN_CAR_VERSION};
 
         // This loader will execute the ContentProvider's query method on a background thread
         return new CursorLoader(this,   // Parent activity context
@@ -546,43 +691,75 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
     @Override
     public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor cursor) {
-        // Bail early if the cursor is null, there is less than 1 row in the cursor
-        // or the user is changing an image of the car (Otherwise all the data inputted
-        // on the EditTexts will be replaced with the ones saved in th database.)
-        if (cursor == null || cursor.getCount() < 1 || mChangingCarImage) {
+        // Bail early if the cursor is null or there is less than 1 row in the cursor
+        // (This should be the only row in the cursor)
+        if (cursor == null || !cursor.moveToFirst()) {
             return;
         }
 
-        // Proceed with moving to the first row of the cursor and reading data from it
-        // (This should be the only row in the cursor)
-        if (cursor.moveToFirst()) {
-            // Find the columns of car attributes that we're interested in
-            int nameColumnIndex = cursor.getColumnIndex(CarEntry.COLUMN_CAR_NAME);
-            int priceColumnIndex = cursor.getColumnIndex(CarEntry.COLUMN_CAR_PRICE);
-            int quantityColumnIndex = cursor.getColumnIndex(CarEntry.COLUMN_CAR_QUANTITY);
-            int supplierColumnIndex = cursor.getColumnIndex(CarEntry.COLUMN_CAR_SUPPLIER);
-            int emailColumnIndex = cursor.getColumnIndex(CarEntry.COLUMN_CAR_EMAIL);
-            int imageColumnIndex = cursor.getColumnIndex(CarEntry.COLUMN_CAR_IMAGE);
-
-            // Extract out the value from the Cursor for the given column index
-            String name = cursor.getString(nameColumnIndex);
-            int price = cursor.getInt(priceColumnIndex);
-            int quantity = cursor.getInt(quantityColumnIndex);
-            String supplier = cursor.getString(supplierColumnIndex);
-            String email = cursor.getString(emailColumnIndex);
-            String carImageUriString = cursor.getString(imageColumnIndex);
-            mImageUri = Uri.parse(carImageUriString);
-
-            // Update the views on the screen with the values from the database
-            mNameEditText.setText(name);
-            mPriceEditText.setText(Integer.toString(price));
-            mQuantityEditText.setText(Integer.toString(quantity));
-            mSupplierEditText.setText(supplier);
-            mEmailEditText.setText(email);
-            mCarImageView.setImageURI(mImageUri);
+        // The car is loaded again every time it changes, e.g. when units of it are sold from
+        // the list. Only the fields whose value changed since the last load are updated, and
+        // the ones the user is editing are left alone.
+        Car car = Car.fromCursor(cursor);
+        long version = cursor.getLong(cursor.getColumnIndex(CarEntry.COLUMN_CAR_VERSION));
+        Car previous = mLoadedCar;
+        boolean merged = bindField(mNameEditText, previous == null ? null : previous.getName(),
+                car.getName());
+        merged &= bindField(mPriceEditText, previous == null ? null : Integer.toString(previous.getPrice()),
+                Integer.toString(car.getPrice()));
+        merged &= bindField(mQuantityEditText, previous == null ? null : Integer.toString(previous.getQuantity()),
+                Integer.toString(car.getQuantity()));
+        merged &= bindField(mSupplierEditText, previous == null ? null : previous.getSupplier(),
+                car.getSupplier());
+        merged &= bindField(mEmailEditText, previous == null ? null : previous.getEmail(),
+                car.getEmail());
+
+        if (!mChangingCarImage) {
+            mImageUri = Uri.parse(car.getImage());
+            mThumbnailUri = car.getThumbnail() == null ? null : Uri.parse(car.getThumbnail());
+            mEditorImageUri = car.getEditorImage() == null ? null : Uri.parse(car.getEditorImage());
+            // Show the editor rendition if there is one, it is much smaller than the original.
+            // The picture already on screen is kept as it is.
+            String image = car.getEditorImage() != null ? car.getEditorImage() : car.getImage();
+            if (!image.equals(mShownImage)) {
+                mShownImage = image;
+                mImageLoader.load(image, mCarImageView);
+            }
+        } else if (previous != null && !TextUtils.equals(previous.getImage(), car.getImage())) {
+            // The user took a new picture, and the picture of the car changed too
+            merged = false;
+        }
+
+        mLoadedCar = car;
+        // The car was saved by someone else over a field the user edited: keep the version the
+        // edit is based on, saving it will ask the user what to do
+        mLoadConflict |= !merged;
+        if (!mLoadConflict) {
+            mCurrentCarVersion = version;
         }
     }
 
+    /**
+     * Show the loaded value of a field, unless the user edited it since the previous load.
+     *
+     * @param previous the value of the previous load, or null if this is the first one
+     * @return false if the user edited the field and the loaded value changed as well
+     */
+    private static boolean bindField(TextView field, String previous, String current) {
+        if (current == null) {
+            current = "";
+        }
+        String shown = field.getText().toString();
+        if (previous != null && !shown.equals(previous)) {
+            // The user's edit wins, it only conflicts if the value it started from changed
+            return current.equals(previous);
+        }
+        if (!shown.equals(current)) {
+            field.setText(current);
+        }
+        return true;
+    }
+
     @Override
     public void onLoaderReset(@NonNull Loader<Cursor> loader) {
         // If the loader is invalidated, clear out all the data from the input fields.
@@ -591,7 +768,10 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mQuantityEditText.setText("");
         mSupplierEditText.setText("");
         mEmailEditText.setText("");
+        mImageLoader.cancel(mCarImageView);
         mCarImageView.setImageURI(null);
+        mLoadedCar = null;
+        mShownImage = null;
     }
 
     /**
@@ -658,21 +838,19 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     private void deleteCar() {
         // Only perform the delete if this is an existing car.
         if (mCurrentCarUri != null) {
-            // Call the ContentResolver to delete the car at the given content URI.
-            // Pass in null for the selection and selection args because the mCurrentCarUri
-            // content URI already identifies the pet that we want.
-            int rowsDeleted = getContentResolver().delete(mCurrentCarUri, null, null);
-
-            // Show a toast message depending on whether or not the delete was successful.
-            if (rowsDeleted == 0) {
-                // If no rows were deleted, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_car_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_car_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // Queue the delete of the car at the given content URI, which already identifies
+            // the car that we want.
+            final Context appContext = getApplicationContext();
+            CarWriteQueue.getInstance(this).delete(mCurrentCarUri, new CarWriteQueue.Callback() {
+                @Override
+                public void onWriteFinished(ContentProviderResult result, Exception error) {
+                    // Show a toast message depending on whether or not the delete was successful.
+                    // If no rows were deleted, then there was an error with the delete.
+                    boolean deleted = result != null && result.count != null && result.count != 0;
+                    showToast(appContext, deleted ? R.string.editor_delete_car_successful
+                            : R.string.editor_delete_car_failed);
+                }
+            });
         }
         // Close the activity
         finish();
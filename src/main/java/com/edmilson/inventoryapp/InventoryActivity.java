@@ -1,10 +1,14 @@
 package com.edmilson.inventoryapp;
 
+import android.content.BroadcastReceiver;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.database.Cursor;
 import android.net.Uri;
 import android.support.annotation.NonNull;
@@ -12,26 +16,93 @@ import android.support.annotation.Nullable;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
+import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.os.Bundle;
+import android.os.Handler;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.edmilson.inventoryapp.data.CarContract;
 import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+import com.edmilson.inventoryapp.data.CarContract.StatsEntry;
+import com.edmilson.inventoryapp.data.CarWriteQueue;
+import com.edmilson.inventoryapp.order.ReorderLoader;
+import com.edmilson.inventoryapp.order.SupplierOrder;
+import com.edmilson.inventoryapp.transfer.CarExporter;
+import com.edmilson.inventoryapp.transfer.TransferService;
+
+import java.util.ArrayList;
+import java.util.List;
 
-public class InventoryActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class InventoryActivity extends AppCompatActivity
+        implements LoaderManager.LoaderCallbacks<CarListLoader.Snapshot>, CarAdapter.OnCarClickListener {
 
     private static final int CAR_LOADER = 0;
-    CarCursorAdapter mCursorAdapter;
+
+    /** Identifier of the loader of the inventory totals */
+    private static final int STATS_LOADER = 1;
+
+    /** Identifier of the loader planning the orders of the cars running low */
+    private static final int REORDER_LOADER = 2;
+
+    /** Cars with fewer units than this are counted as running low in the header */
+    private static final int LOW_STOCK_THRESHOLD = 5;
+
+    /** Request code of the file picker of the import */
+    private static final int REQUEST_IMPORT = 1;
+
+    /** Key of the loader arguments holding the text to search for */
+    private static final String ARG_QUERY = "query";
+
+    /** Time to wait after the last key stroke before searching, in milliseconds */
+    private static final long SEARCH_DELAY_MS = 300;
+
+    CarAdapter mCarAdapter;
+    private View mEmptyView;
+
+    /** Views of the dashboard header */
+    private TextView mTotalQuantityTextView;
+    private TextView mTotalValueTextView;
+    private TextView mLowStockTextView;
+
+    /** Progress of a running import */
+    private ProgressBar mTransferProgress;
+
+    /** Whether the first rows were handed to the list, to time the start of the app */
+    private boolean mFirstRowsDrawn;
+
+    /** Text currently searched for, null when all the cars are listed */
+    private String mQuery;
+
+    private final Handler mHandler = new Handler();
+
+    /** Restart the loader with the text typed so far */
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Bundle args = new Bundle();
+            args.putString(ARG_QUERY, mQuery);
+            getSupportLoaderManager().restartLoader(CAR_LOADER, args, InventoryActivity.this);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Have the provider open the database and read the first rows while the layout is inflated
+        getContentResolver().call(CarContract.BASE_CONTENT_URI, CarContract.METHOD_WARM_UP, null, null);
         setContentView(R.layout.activity_inventory);
 
         // Setup FAB to open EditorActivity
@@ -44,37 +115,285 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
             }
         });
 
-        // Find the ListView which will be populated with the inventory data
-        ListView carListView = findViewById(R.id.list);
+        // Find the RecyclerView which will be populated with the inventory data
+        RecyclerView carRecyclerView = findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        carRecyclerView.setLayoutManager(layoutManager);
 
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        carListView.setEmptyView(emptyView);
+        // Find the empty view, so that it only shows when the list has 0 items.
+        mEmptyView = findViewById(R.id.empty_view);
 
-        // Setup an adapter to create a list item for each row of car data in the cursor
-        // There is no pet data yet (until the loader finishes) so pass in null for the Cursor
-        mCursorAdapter = new CarCursorAdapter(this, null);
-        carListView.setAdapter(mCursorAdapter);
+        // Find the views of the dashboard header
+        mTotalQuantityTextView = findViewById(R.id.total_quantity_text_view);
+        mTotalValueTextView = findViewById(R.id.total_value_text_view);
+        mLowStockTextView = findViewById(R.id.low_stock_text_view);
+        mTransferProgress = findViewById(R.id.transfer_progress);
 
-        // Setup the item click listener
-        carListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                Intent intent = new Intent(InventoryActivity.this, EditorActivity.class);
-
-                Uri currentCarUri = ContentUris.withAppendedId(CarEntry.CONTENT_URI, id);
+        // Setup an adapter to create a list item for each car
+        // There is no car data yet (until the loader finishes)
+        mCarAdapter = new CarAdapter(this, this);
+        carRecyclerView.setAdapter(mCarAdapter);
 
-                // Set the Uri on the data field of the intent
-                intent.setData(currentCarUri);
-
-                // Launch the {@link EditorActivity} to display the data for the current car
-                startActivity(intent);
+        // Read the next page of cars when the user scrolls close to the end of the list
+        carRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                int itemCount = layoutManager.getItemCount();
+                if (itemCount > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= itemCount - CarListLoader.PAGE_SIZE / 2) {
+                    Loader<CarListLoader.Snapshot> loader = getSupportLoaderManager().getLoader(CAR_LOADER);
+                    if (loader != null) {
+                        ((CarListLoader) loader).loadNextPage();
+                    }
+                }
             }
         });
 
         // Kick off the loader
         //no inspection deprecation
         getSupportLoaderManager().initLoader(CAR_LOADER, null, InventoryActivity.this);
+        getSupportLoaderManager().initLoader(STATS_LOADER, null, mStatsLoaderCallbacks);
+        // Orders planned before a rotation are shown again
+        if (getSupportLoaderManager().getLoader(REORDER_LOADER) != null) {
+            getSupportLoaderManager().initLoader(REORDER_LOADER, null, mReorderLoaderCallbacks);
+        }
+    }
+
+    /**
+     * Loads the totals of the dashboard header. They come from a single summary row kept up to
+     * date by the database, so the header shows up without reading the cars.
+     */
+    private final LoaderManager.LoaderCallbacks<Cursor> mStatsLoaderCallbacks =
+            new LoaderManager.LoaderCallbacks<Cursor>() {
+        @NonNull
+        @Override
+        public Loader<Cursor> onCreateLoader(int id, @Nullable Bundle args) {
+            return new CursorLoader(InventoryActivity.this,
+                    StatsEntry.buildStatsUri(LOW_STOCK_THRESHOLD), null, null, null, null);
+        }
+
+        @Override
+        public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor cursor) {
+            if (cursor == null || !cursor.moveToFirst()) {
+                return;
+            }
+            long totalQuantity = cursor.getLong(cursor.getColumnIndex(StatsEntry.COLUMN_TOTAL_QUANTITY));
+            long totalValue = cursor.getLong(cursor.getColumnIndex(StatsEntry.COLUMN_TOTAL_VALUE));
+            int lowStock = cursor.getInt(cursor.getColumnIndex(StatsEntry.COLUMN_LOW_STOCK_COUNT));
+
+            mTotalQuantityTextView.setText(Long.toString(totalQuantity));
+            mTotalValueTextView.setText(Long.toString(totalValue));
+            mLowStockTextView.setText(getResources().getQuantityString(
+                    R.plurals.low_stock_count, lowStock, lowStock));
+        }
+
+        @Override
+        public void onLoaderReset(@NonNull Loader<Cursor> loader) {
+            // Nothing to release, the header keeps the last totals
+        }
+    };
+
+    /**
+     * Plans the orders of all the cars running low in the background, then lets the user send
+     * them, one email per supplier.
+     */
+    private final LoaderManager.LoaderCallbacks<List<SupplierOrder>> mReorderLoaderCallbacks =
+            new LoaderManager.LoaderCallbacks<List<SupplierOrder>>() {
+        @NonNull
+        @Override
+        public Loader<List<SupplierOrder>> onCreateLoader(int id, @Nullable Bundle args) {
+            return new ReorderLoader(InventoryActivity.this, LOW_STOCK_THRESHOLD);
+        }
+
+        @Override
+        public void onLoadFinished(@NonNull Loader<List<SupplierOrder>> loader, List<SupplierOrder> orders) {
+            showOrdersDialog(orders);
+        }
+
+        @Override
+        public void onLoaderReset(@NonNull Loader<List<SupplierOrder>> loader) {
+            // Nothing to release, the dialog holds its own copy of the orders
+        }
+    };
+
+    /** Drop the planned orders, they are planned again next time */
+    private final Runnable mDestroyReorderRunnable = new Runnable() {
+        @Override
+        public void run() {
+            getSupportLoaderManager().destroyLoader(REORDER_LOADER);
+        }
+    };
+
+    /**
+     * Show the planned orders. Tapping a supplier sends its order, "Send all" opens one email
+     * per supplier, one after the other.
+     */
+    private void showOrdersDialog(final List<SupplierOrder> orders) {
+        if (orders.isEmpty()) {
+            Toast.makeText(this, R.string.reorder_nothing, Toast.LENGTH_SHORT).show();
+            // Not while the result is being delivered
+            mHandler.post(mDestroyReorderRunnable);
+            return;
+        }
+
+        String[] suppliers = new String[orders.size()];
+        for (int i = 0; i < orders.size(); i++) {
+            SupplierOrder order = orders.get(i);
+            suppliers[i] = getResources().getQuantityString(R.plurals.reorder_supplier_summary,
+                    order.getLines().size(), order.getSupplier(), order.getLines().size());
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.reorder_dialog_title);
+        builder.setItems(suppliers, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int which) {
+                sendOrders(orders.subList(which, which + 1));
+            }
+        });
+        builder.setPositiveButton(R.string.reorder_send_all, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                sendOrders(orders);
+            }
+        });
+        builder.setNegativeButton(R.string.cancel, null);
+        builder.setOnDismissListener(new DialogInterface.OnDismissListener() {
+            @Override
+            public void onDismiss(DialogInterface dialog) {
+                // The orders are done with, unless the dialog is only shown again after a rotation
+                if (!isChangingConfigurations()) {
+                    mHandler.post(mDestroyReorderRunnable);
+                }
+            }
+        });
+        builder.show();
+    }
+
+    /**
+     * Open an email app with each of the given orders. The emails are stacked, so the user
+     * sends them one after the other.
+     */
+    private void sendOrders(List<SupplierOrder> orders) {
+        List<Intent> intents = new ArrayList<>();
+        for (SupplierOrder order : orders) {
+            Intent emailIntent = order.toEmailIntent(this);
+            if (emailIntent.resolveActivity(getPackageManager()) != null) {
+                intents.add(emailIntent);
+            }
+        }
+        if (!intents.isEmpty()) {
+            startActivities(intents.toArray(new Intent[intents.size()]));
+        }
+    }
+
+    /**
+     * Shows the progress and the outcome of the imports and exports run by {@link TransferService}.
+     */
+    private final BroadcastReceiver mTransferReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (TransferService.ACTION_PROGRESS.equals(intent.getAction())) {
+                int percent = intent.getIntExtra(TransferService.EXTRA_PERCENT, -1);
+                mTransferProgress.setVisibility(View.VISIBLE);
+                mTransferProgress.setIndeterminate(percent < 0);
+                mTransferProgress.setProgress(Math.max(percent, 0));
+                return;
+            }
+            mTransferProgress.setVisibility(View.GONE);
+            String error = intent.getStringExtra(TransferService.EXTRA_ERROR);
+            int count = intent.getIntExtra(TransferService.EXTRA_COUNT, 0);
+            int rejected = intent.getIntExtra(TransferService.EXTRA_REJECTED, 0);
+            String message;
+            if (intent.hasExtra(TransferService.EXTRA_FILE)) {
+                message = error != null ? getString(R.string.export_failed, error)
+                        : getResources().getQuantityString(R.plurals.export_finished, count, count,
+                        intent.getStringExtra(TransferService.EXTRA_FILE));
+            } else if (error != null) {
+                message = getString(R.string.import_failed, error);
+            } else {
+                message = getResources().getQuantityString(R.plurals.import_finished, count, count);
+                if (rejected > 0) {
+                    message += "\n" + getResources().getQuantityString(R.plurals.import_rejected,
+                            rejected, rejected);
+                }
+            }
+            Toast.makeText(InventoryActivity.this, message, Toast.LENGTH_LONG).show();
+        }
+    };
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        IntentFilter filter = new IntentFilter(TransferService.ACTION_PROGRESS);
+        filter.addAction(TransferService.ACTION_FINISHED);
+        LocalBroadcastManager.getInstance(this).registerReceiver(mTransferReceiver, filter);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        LocalBroadcastManager.getInstance(this).unregisterReceiver(mTransferReceiver);
+    }
+
+    /**
+     * Let the user pick the CSV or JSON file to import.
+     */
+    private void pickImportFile() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        if (intent.resolveActivity(getPackageManager()) != null) {
+            startActivityForResult(intent, REQUEST_IMPORT);
+        }
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_IMPORT) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                // The file is imported in the background, the list follows as the cars arrive
+                TransferService.startImport(this, data.getData());
+            }
+            return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mHandler.removeCallbacks(mSearchRunnable);
+        mHandler.removeCallbacks(mDestroyReorderRunnable);
+    }
+
+    /**
+     * Search the cars as the user types. Each key stroke postpones the search a little, so
+     * that typing a word only runs one query.
+     */
+    private void search(String query) {
+        String trimmed = query == null ? "" : query.trim();
+        String current = mQuery == null ? "" : mQuery;
+        if (trimmed.equals(current)) {
+            return;
+        }
+        mQuery = trimmed.isEmpty() ? null : trimmed;
+        mHandler.removeCallbacks(mSearchRunnable);
+        mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MS);
+    }
+
+    /**
+     * Open the {@link EditorActivity} to display the data of the clicked car.
+     */
+    @Override
+    public void onCarClick(long id) {
+        Intent intent = new Intent(InventoryActivity.this, EditorActivity.class);
+
+        Uri currentCarUri = ContentUris.withAppendedId(CarEntry.CONTENT_URI, id);
+
+        // Set the Uri on the data field of the intent
+        intent.setData(currentCarUri);
+
+        // Launch the {@link EditorActivity} to display the data for the current car
+        startActivity(intent);
     }
 
     /**
@@ -109,8 +428,12 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
      * Helper method to delete all cars in the database.
      */
     private void deleteAllCars() {
-        int rowsDeleted = getContentResolver().delete(CarEntry.CONTENT_URI, null, null);
-        Log.v("CatalogActivity", rowsDeleted + " rows deleted from car database");
+        CarWriteQueue.getInstance(this).delete(CarEntry.CONTENT_URI, new CarWriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(ContentProviderResult result, Exception error) {
+                Log.v("CatalogActivity", (result != null ? result.count : 0) + " rows deleted from car database");
+            }
+        });
     }
 
     /**
@@ -133,12 +456,14 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
                 + '/' + getResources().getResourceEntryName(R.drawable.car_default));
         values.put(CarEntry.COLUMN_CAR_IMAGE, String.valueOf(imageUri));
 
-        // Insert a new row for Ford Mustang into the provider using the ContentResolver.
-        // Use the {@link CarEntry#CONTENT_URI} to indicate that we want to insert
-        // into the cars database table.
+        // Queue a new row for Ford Mustang into the cars database table.
         // Receive the new content URI that will allow us to access Ford Mustang's data in the future.
-        Uri newUri = getContentResolver().insert(CarEntry.CONTENT_URI, values);
-        Log.v("InventoryActivity", "newUri" + newUri);
+        CarWriteQueue.getInstance(this).insert(values, new CarWriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(ContentProviderResult result, Exception error) {
+                Log.v("InventoryActivity", "newUri" + (result != null ? result.uri : null));
+            }
+        });
     }
 
     @Override
@@ -146,6 +471,22 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_inventory, menu);
+
+        // Search the cars while the user types in the search view of the app bar
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText);
+                return true;
+            }
+        });
         return true;
     }
 
@@ -161,39 +502,68 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
             case R.id.action_delete_all_entries:
                 showDeleteConfirmationDialog();
                 return true;
+            // Respond to a click on the "Import cars" menu option
+            case R.id.action_import:
+                pickImportFile();
+                return true;
+            // Respond to a click on the "Export as CSV" menu option
+            case R.id.action_export_csv:
+                TransferService.startExport(this, CarExporter.Format.CSV);
+                return true;
+            // Respond to a click on the "Export backup" menu option
+            case R.id.action_export_backup:
+                TransferService.startExport(this, CarExporter.Format.BINARY);
+                return true;
+            // Respond to a click on the "Reorder low stock" menu option
+            case R.id.action_reorder:
+                getSupportLoaderManager().restartLoader(REORDER_LOADER, null, mReorderLoaderCallbacks);
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
     @NonNull
     @Override
-    public Loader<Cursor> onCreateLoader(int i, @Nullable Bundle bundle) {
+    public Loader<CarListLoader.Snapshot> onCreateLoader(int i, @Nullable Bundle bundle) {
         // Define a projection that specifies the columns from the table we care about
         String[] projection = {
                 CarEntry._ID,
                 CarEntry.COLUMN_CAR_NAME,
                 CarEntry.COLUMN_CAR_QUANTITY,
                 CarEntry.COLUMN_CAR_PRICE,
-                CarEntry.COLUMN_CAR_IMAGE};
+                CarEntry.COLUMN_CAR_IMAGE,
+                CarEntry.COLUMN_CAR_THUMBNAIL};
 
-        // This Loader will execute the ContentProvider's query method on a background thread
-        return  new CursorLoader(this,  // Parent activity context
-                CarEntry.CONTENT_URI,           // Provider content URI to query
-                projection,                     // Columns to include in the resulting Cursor
-                null,                   // No Selection clause
-                null,               // No Selection arguments
-                null);                  //Default sort order
+        // This Loader will execute the ContentProvider's query method on a background thread,
+        // one page of cars at a time, or the best matches when searching
+        String query = bundle != null ? bundle.getString(ARG_QUERY) : null;
+        return new CarListLoader(this, projection, query);
     }
 
     @Override
-    public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor cursor) {
-        // Update {@link CarCursorAdapter} with this new cursor containing updated car data
-        mCursorAdapter.swapCursor(cursor);
+    public void onLoadFinished(@NonNull Loader<CarListLoader.Snapshot> loader, CarListLoader.Snapshot snapshot) {
+        // Hand the new snapshot to {@link CarAdapter}, which only rebinds the rows that changed
+        mCarAdapter.submitList(snapshot.cars);
+        mEmptyView.setVisibility(snapshot.cars.isEmpty() ? View.VISIBLE : View.GONE);
+
+        if (!mFirstRowsDrawn) {
+            // The rows are laid out and drawn in the next frame, that is when the user sees them
+            mFirstRowsDrawn = true;
+            final View list = findViewById(R.id.list);
+            list.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    list.getViewTreeObserver().removeOnPreDrawListener(this);
+                    StartupMetrics.mark(StartupMetrics.FIRST_ROWS_SHOWN);
+                    return true;
+                }
+            });
+        }
     }
 
     @Override
-    public void onLoaderReset(@NonNull Loader<Cursor> loader) {
+    public void onLoaderReset(@NonNull Loader<CarListLoader.Snapshot> loader) {
         // Callback called when the data needs to be deleted
-        mCursorAdapter.swapCursor(null);
+        mCarAdapter.submitList(null);
     }
 }
@@ -0,0 +1,93 @@
+package com.edmilson.inventoryapp;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timings of a cold start of the app, from the start of the process to the first rows of the
+ * inventory drawn on the screen, so cold start regressions show up in the logs (filter on the
+ * {@link #LOG_TAG} tag).
+ * <p>
+ * Every milestone is only recorded the first time it is reached in the process, as the time
+ * elapsed since the start of the process. When {@link #FIRST_ROWS_SHOWN} is reached all the
+ * milestones so far are logged on one line. All the methods may be called from any thread.
+ */
+public final class StartupMetrics {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = StartupMetrics.class.getSimpleName();
+
+    /** {@link com.edmilson.inventoryapp.data.CarProvider} created, the first component of the app */
+    public static final String PROVIDER_CREATED = "provider_created";
+
+    /** Database opened, and upgraded if needed */
+    public static final String DATABASE_OPEN = "database_open";
+
+    /** First page of cars read into memory */
+    public static final String FIRST_PAGE_READY = "first_page_ready";
+
+    /** Thumbnails of the first rows decoded into the image cache */
+    public static final String THUMBNAILS_READY = "thumbnails_ready";
+
+    /** First rows of the inventory drawn */
+    public static final String FIRST_ROWS_SHOWN = "first_rows_shown";
+
+    /** Start of the process, in {@link SystemClock#elapsedRealtime()} time */
+    private static final long sProcessStart = getProcessStart();
+
+    /** Time of every milestone reached, since the start of the process. Guarded by the class. */
+    private static final Map<String, Long> sMilestones = new LinkedHashMap<>();
+
+    private StartupMetrics() {
+    }
+
+    /**
+     * Record that the given milestone is reached now, unless it was already reached.
+     */
+    public static void mark(String milestone) {
+        long elapsed = SystemClock.elapsedRealtime() - sProcessStart;
+        String summary = null;
+        synchronized (StartupMetrics.class) {
+            if (sMilestones.containsKey(milestone)) {
+                return;
+            }
+            sMilestones.put(milestone, elapsed);
+            if (FIRST_ROWS_SHOWN.equals(milestone)) {
+                summary = sMilestones.toString();
+            }
+        }
+        Log.d(LOG_TAG, milestone + " after " + elapsed + " ms");
+        if (summary != null) {
+            // The milestones reached later, such as the thumbnails, are only logged on their own
+            Log.i(LOG_TAG, "Cold start in " + elapsed + " ms: " + summary);
+        }
+    }
+
+    /**
+     * Return the time from the start of the process to the given milestone in milliseconds, or
+     * -1 if it isn't reached yet.
+     */
+    public static long getElapsed(String milestone) {
+        synchronized (StartupMetrics.class) {
+            Long elapsed = sMilestones.get(milestone);
+            return elapsed != null ? elapsed : -1;
+        }
+    }
+
+    /**
+     * Return the start of the process. Before Android N it isn't known, so the loading of this
+     * class stands for it: the provider loads it when it is created, right after the process
+     * starts, so only the time taken to create the application is left out.
+     */
+    private static long getProcessStart() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Process.getStartElapsedRealtime();
+        }
+        return SystemClock.elapsedRealtime();
+    }
+}
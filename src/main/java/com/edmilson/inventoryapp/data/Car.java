@@ -0,0 +1,203 @@
+package com.edmilson.inventoryapp.data;
+
+import android.database.Cursor;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+/**
+ * Immutable snapshot of one car, along with its supplier. Columns missing from the cursor it was
+ * read from are left null (or 0).
+ */
+public final class Car {
+
+    private final long mId;
+    private final String mName;
+    private final int mPrice;
+    private final int mQuantity;
+    private final long mSupplierId;
+    private final String mSupplier;
+    private final String mEmail;
+    private final String mImage;
+    private final String mThumbnail;
+    private final String mEditorImage;
+    private final long mVersion;
+
+    public Car(long id, String name, int price, int quantity, long supplierId, String supplier,
+               String email, String image, String thumbnail, String editorImage, long version) {
+        mId = id;
+        mName = name;
+        mPrice = price;
+        mQuantity = quantity;
+        mSupplierId = supplierId;
+        mSupplier = supplier;
+        mEmail = email;
+        mImage = image;
+        mThumbnail = thumbnail;
+        mEditorImage = editorImage;
+        mVersion = version;
+    }
+
+    /**
+     * Indexes of the car columns in a cursor, -1 for the columns it doesn't have.
+     * Looking them up is a string search, so do it once per cursor rather than once per row.
+     */
+    public static final class Columns {
+
+        final int id;
+        final int name;
+        final int price;
+        final int quantity;
+        final int supplierId;
+        final int supplier;
+        final int email;
+        final int image;
+        final int thumbnail;
+        final int editorImage;
+        final int version;
+
+        public Columns(Cursor cursor) {
+            id = cursor.getColumnIndex(CarEntry._ID);
+            name = cursor.getColumnIndex(CarEntry.COLUMN_CAR_NAME);
+            price = cursor.getColumnIndex(CarEntry.COLUMN_CAR_PRICE);
+            quantity = cursor.getColumnIndex(CarEntry.COLUMN_CAR_QUANTITY);
+            supplierId = cursor.getColumnIndex(CarEntry.COLUMN_CAR_SUPPLIER_ID);
+            supplier = cursor.getColumnIndex(CarEntry.COLUMN_CAR_SUPPLIER);
+            email = cursor.getColumnIndex(CarEntry.COLUMN_CAR_EMAIL);
+            image = cursor.getColumnIndex(CarEntry.COLUMN_CAR_IMAGE);
+            thumbnail = cursor.getColumnIndex(CarEntry.COLUMN_CAR_THUMBNAIL);
+            editorImage = cursor.getColumnIndex(CarEntry.COLUMN_CAR_EDITOR_IMAGE);
+            version = cursor.getColumnIndex(CarEntry.COLUMN_CAR_VERSION);
+        }
+    }
+
+    /**
+     * Read the car at the current position of the cursor. When reading more than one row,
+     * use {@link #fromCursor(Cursor, Columns)} instead.
+     */
+    public static Car fromCursor(Cursor cursor) {
+        return fromCursor(cursor, new Columns(cursor));
+    }
+
+    /**
+     * Read the car at the current position of the cursor, whose column indexes are already known.
+     */
+    public static Car fromCursor(Cursor cursor, Columns columns) {
+        return new Car(
+                getLong(cursor, columns.id),
+                getString(cursor, columns.name),
+                (int) getLong(cursor, columns.price),
+                (int) getLong(cursor, columns.quantity),
+                getLong(cursor, columns.supplierId),
+                getString(cursor, columns.supplier),
+                getString(cursor, columns.email),
+                getString(cursor, columns.image),
+                getString(cursor, columns.thumbnail),
+                getString(cursor, columns.editorImage),
+                getLong(cursor, columns.version));
+    }
+
+    private static long getLong(Cursor cursor, int index) {
+        return index == -1 ? 0 : cursor.getLong(index);
+    }
+
+    private static String getString(Cursor cursor, int index) {
+        return index == -1 ? null : cursor.getString(index);
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getPrice() {
+        return mPrice;
+    }
+
+    public int getQuantity() {
+        return mQuantity;
+    }
+
+    public long getSupplierId() {
+        return mSupplierId;
+    }
+
+    public String getSupplier() {
+        return mSupplier;
+    }
+
+    public String getEmail() {
+        return mEmail;
+    }
+
+    public String getImage() {
+        return mImage;
+    }
+
+    public String getThumbnail() {
+        return mThumbnail;
+    }
+
+    public String getEditorImage() {
+        return mEditorImage;
+    }
+
+    /**
+     * Version of the car, bumped by every write. It isn't shown, so {@link #equals} leaves it
+     * out: a sale bumps it too, and must still only rebind the quantity of the row.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Uri string of the picture to show in the list: the thumbnail if there is one,
+     * the original picture otherwise.
+     */
+    public String getListImage() {
+        return mThumbnail != null ? mThumbnail : mImage;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Car)) {
+            return false;
+        }
+        Car car = (Car) o;
+        return mQuantity == car.mQuantity && equalsIgnoringQuantity(car);
+    }
+
+    /**
+     * Return true if the other car only differs from this one by its quantity, if at all.
+     */
+    public boolean equalsIgnoringQuantity(Car car) {
+        return mId == car.mId
+                && mPrice == car.mPrice
+                && mSupplierId == car.mSupplierId
+                && equal(mName, car.mName)
+                && equal(mSupplier, car.mSupplier)
+                && equal(mEmail, car.mEmail)
+                && equal(mImage, car.mImage)
+                && equal(mThumbnail, car.mThumbnail)
+                && equal(mEditorImage, car.mEditorImage);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mId ^ (mId >>> 32));
+        result = 31 * result + mPrice;
+        result = 31 * result + mQuantity;
+        result = 31 * result + (mName != null ? mName.hashCode() : 0);
+        result = 31 * result + (mImage != null ? mImage.hashCode() : 0);
+        return result;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
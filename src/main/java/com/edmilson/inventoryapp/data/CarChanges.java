@@ -0,0 +1,211 @@
+package com.edmilson.inventoryapp.data;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Describes which cars were inserted, updated and deleted by one or more writes. It is sent to
+ * the observers of {@link CarEntry#CHANGES_URI} as the query parameters of the notified Uri, e.g.
+ * content://com.edmilson.inventoryapp/changes/cars?updated=3,7&amp;deleted=5
+ * <p>
+ * When too many cars changed to list them, or the cars that changed aren't known, the
+ * descriptor only says that anything may have changed, see {@link #isAll()}.
+ */
+public final class CarChanges {
+
+    /** Query parameter holding the IDs of the inserted cars */
+    public static final String PARAM_INSERTED = "inserted";
+
+    /** Query parameter holding the IDs of the updated cars */
+    public static final String PARAM_UPDATED = "updated";
+
+    /** Query parameter holding the IDs of the deleted cars */
+    public static final String PARAM_DELETED = "deleted";
+
+    /** Query parameter set when any car may have changed */
+    public static final String PARAM_ALL = "all";
+
+    /** Number of IDs above which the changes are no longer listed one by one */
+    static final int MAX_IDS = 100;
+
+    private final Set<Long> mInserted = new TreeSet<>();
+    private final Set<Long> mUpdated = new TreeSet<>();
+    private final Set<Long> mDeleted = new TreeSet<>();
+    private boolean mAll;
+
+    /** True if a supplier was added or changed, which isn't part of the descriptor Uri */
+    private boolean mSuppliers;
+
+    void inserted(long id) {
+        mInserted.add(id);
+        checkSize();
+    }
+
+    void updated(long id) {
+        mUpdated.add(id);
+        checkSize();
+    }
+
+    void deleted(long id) {
+        mDeleted.add(id);
+        checkSize();
+    }
+
+    /**
+     * Record that any car may have changed.
+     */
+    void all() {
+        mAll = true;
+        mInserted.clear();
+        mUpdated.clear();
+        mDeleted.clear();
+    }
+
+    /**
+     * Record that a supplier was added or changed.
+     */
+    void suppliers() {
+        mSuppliers = true;
+    }
+
+    /**
+     * Add the changes of the other descriptor to this one.
+     */
+    void addAll(CarChanges other) {
+        mSuppliers |= other.mSuppliers;
+        if (mAll) {
+            return;
+        }
+        if (other.mAll) {
+            all();
+            return;
+        }
+        mInserted.addAll(other.mInserted);
+        mUpdated.addAll(other.mUpdated);
+        mDeleted.addAll(other.mDeleted);
+        checkSize();
+    }
+
+    private void checkSize() {
+        if (mInserted.size() + mUpdated.size() + mDeleted.size() > MAX_IDS) {
+            all();
+        }
+    }
+
+    public boolean isEmpty() {
+        return !mSuppliers && !hasCars();
+    }
+
+    /**
+     * Return true if any car changed, as opposed to only the suppliers.
+     */
+    boolean hasCars() {
+        return mAll || !mInserted.isEmpty() || !mUpdated.isEmpty() || !mDeleted.isEmpty();
+    }
+
+    /**
+     * Return true if a supplier was added or changed.
+     */
+    boolean hasSuppliers() {
+        return mSuppliers;
+    }
+
+    /**
+     * Return true if any car may have changed, in which case the sets of IDs are empty.
+     */
+    public boolean isAll() {
+        return mAll;
+    }
+
+    public Set<Long> getInserted() {
+        return Collections.unmodifiableSet(mInserted);
+    }
+
+    public Set<Long> getUpdated() {
+        return Collections.unmodifiableSet(mUpdated);
+    }
+
+    public Set<Long> getDeleted() {
+        return Collections.unmodifiableSet(mDeleted);
+    }
+
+    /**
+     * Return true if the car with the given ID may have changed.
+     */
+    public boolean affects(long id) {
+        return mAll || mInserted.contains(id) || mUpdated.contains(id) || mDeleted.contains(id);
+    }
+
+    /**
+     * Return the IDs of all the cars that changed, whatever the operation.
+     */
+    Set<Long> getIds() {
+        Set<Long> ids = new TreeSet<>(mInserted);
+        ids.addAll(mUpdated);
+        ids.addAll(mDeleted);
+        return ids;
+    }
+
+    /**
+     * Build the Uri notified to the observers of {@link CarEntry#CHANGES_URI}.
+     */
+    Uri toUri() {
+        Uri.Builder builder = CarEntry.CHANGES_URI.buildUpon();
+        if (mAll) {
+            builder.appendQueryParameter(PARAM_ALL, "true");
+        } else {
+            appendIds(builder, PARAM_INSERTED, mInserted);
+            appendIds(builder, PARAM_UPDATED, mUpdated);
+            appendIds(builder, PARAM_DELETED, mDeleted);
+        }
+        return builder.build();
+    }
+
+    private static void appendIds(Uri.Builder builder, String parameter, Set<Long> ids) {
+        if (!ids.isEmpty()) {
+            builder.appendQueryParameter(parameter, TextUtils.join(",", ids));
+        }
+    }
+
+    /**
+     * Read the changes described by a Uri notified to the observers of
+     * {@link CarEntry#CHANGES_URI}. A missing or unreadable Uri means any car may have changed.
+     */
+    public static CarChanges fromUri(Uri uri) {
+        CarChanges changes = new CarChanges();
+        if (uri == null || !uri.getPath().equals(CarEntry.CHANGES_URI.getPath())
+                || uri.getQueryParameter(PARAM_ALL) != null) {
+            changes.all();
+            return changes;
+        }
+        try {
+            readIds(uri, PARAM_INSERTED, changes.mInserted);
+            readIds(uri, PARAM_UPDATED, changes.mUpdated);
+            readIds(uri, PARAM_DELETED, changes.mDeleted);
+        } catch (NumberFormatException e) {
+            changes.all();
+            return changes;
+        }
+        if (!changes.hasCars()) {
+            // A notification without a descriptor, so anything may have changed
+            changes.all();
+        }
+        return changes;
+    }
+
+    private static void readIds(Uri uri, String parameter, Set<Long> ids) {
+        String value = uri.getQueryParameter(parameter);
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        for (String id : value.split(",")) {
+            ids.add(Long.parseLong(id));
+        }
+    }
+}
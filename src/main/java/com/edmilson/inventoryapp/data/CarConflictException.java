@@ -0,0 +1,13 @@
+package com.edmilson.inventoryapp.data;
+
+/**
+ * Thrown by the provider when a car is updated through
+ * {@link CarContract.CarEntry#buildVersionedUri} but changed since the given version was read,
+ * for example because units of it were sold meanwhile. Nothing is written.
+ */
+public class CarConflictException extends IllegalStateException {
+
+    public CarConflictException(long id, long version) {
+        super("Car " + id + " changed since version " + version);
+    }
+}
@@ -1,6 +1,7 @@
 package com.edmilson.inventoryapp.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -31,6 +32,109 @@ public final class CarContract {
      */
     public static final String PATH_CARS = "cars";
 
+    /**
+     * Path appended to the URI of a single car to sell it, e.g.
+     * content://com.edmilson.inventoryapp/cars/3/sell
+     */
+    public static final String PATH_SELL = "sell";
+
+    /**
+     * Path to search the cars by name and supplier, e.g.
+     * content://com.edmilson.inventoryapp/cars/search?q=ford
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path of the totals of the inventory, e.g. content://com.edmilson.inventoryapp/cars/stats
+     */
+    public static final String PATH_STATS = "stats";
+
+    /**
+     * Path counting the cars running low, e.g.
+     * content://com.edmilson.inventoryapp/cars/low_stock?threshold=5
+     */
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+    /**
+     * Path of the cars to reorder, e.g.
+     * content://com.edmilson.inventoryapp/cars/reorder?threshold=5&amp;since=1500000000000
+     */
+    public static final String PATH_REORDER = "reorder";
+
+    /**
+     * Query parameter of the stats, low stock and reorder URIs: cars with fewer units than this
+     * are low.
+     */
+    public static final String QUERY_PARAMETER_THRESHOLD = "threshold";
+
+    /**
+     * Query parameter of the reorder URI: the sales made since this time, in milliseconds since
+     * the epoch, are counted.
+     */
+    public static final String QUERY_PARAMETER_SINCE = "since";
+
+    /**
+     * Path of the suppliers, e.g. content://com.edmilson.inventoryapp/suppliers
+     */
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    /**
+     * Path of the sales ledger, e.g. content://com.edmilson.inventoryapp/sales
+     */
+    public static final String PATH_SALES = "sales";
+
+    /** Path of the sales totals by car, under the sales path */
+    public static final String PATH_BY_CAR = "by_car";
+
+    /** Path of the sales totals by day, under the sales path */
+    public static final String PATH_BY_DAY = "by_day";
+
+    /** Path of the sales totals by supplier, under the sales path */
+    public static final String PATH_BY_SUPPLIER = "by_supplier";
+
+    /**
+     * Query parameter of the sales URI when deleting: only the sales made before the given
+     * time, in milliseconds since the epoch, are removed from the ledger.
+     */
+    public static final String QUERY_PARAMETER_BEFORE = "before";
+
+    /**
+     * Path of the change notifications, which isn't queried but only observed. It sits outside
+     * of the cars path so that observing it doesn't also fire for every single car.
+     */
+    public static final String PATH_CHANGES = "changes";
+
+    /**
+     * Query parameter holding the text to search for on the search URI.
+     */
+    public static final String QUERY_PARAMETER_QUERY = "q";
+
+    /**
+     * Query parameter limiting the number of cars returned by a query on the cars URI.
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * Query parameter to page through the cars URI: only the cars with an ID bigger than the
+     * given one are returned, sorted by ID. Used with {@link #QUERY_PARAMETER_LIMIT}, the ID of
+     * the last car of a page is where the next page starts.
+     */
+    public static final String QUERY_PARAMETER_AFTER = "after";
+
+    /**
+     * Query parameter of a single car URI when updating it: the version of the car the new
+     * values are based on. The car is only updated if it still has this version, otherwise
+     * the update throws a {@link CarConflictException}.
+     */
+    public static final String QUERY_PARAMETER_VERSION = "version";
+
+    /**
+     * Method of the provider, called through {@link android.content.ContentResolver#call} with
+     * {@link #BASE_CONTENT_URI}: open the database and read the first rows of the list in the
+     * background, when the list is about to be shown. Only the first call does anything.
+     */
+    public static final String METHOD_WARM_UP = "warm_up";
+
     /**
      * Inner class that defines constant values for the cars database table.
      * Each entry in the table represents a single car.
@@ -40,6 +144,15 @@ public final class CarContract {
         /** The content URI to access the car data in the provider */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_CARS);
 
+        /**
+         * The URI notified once for every group of changes to the cars, along with the URIs of
+         * the single cars that changed. The notified URI describes the changes, read it with
+         * {@link CarChanges#fromUri(Uri)}. The cursors of the lists, searches and totals are
+         * notified through it, so they are reloaded once per group of changes.
+         */
+        public static final Uri CHANGES_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_CHANGES).appendPath(PATH_CARS).build();
+
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of cars.
          */
@@ -52,9 +165,71 @@ public final class CarContract {
         public static final String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CARS;
 
+        /**
+         * Key of the {@link android.content.ContentValues} given when selling a car through
+         * {@link #buildSellUri(long)}: how many units are sold. Optional, defaults to 1.
+         * Type: INTEGER
+         */
+        public static final String SELL_AMOUNT = "amount";
+
+        /**
+         * Build the URI to sell units of the car with the given ID. Updating it decrements the
+         * quantity of the car in a single statement, as long as there is enough stock, and
+         * returns 1 if the car was sold or 0 if it is out of stock.
+         */
+        public static Uri buildSellUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon()
+                    .appendPath(PATH_SELL)
+                    .build();
+        }
+
+        /**
+         * Build the URI of a page of cars: at most limit cars, sorted by ID, whose ID is bigger
+         * than afterId. Use 0 as afterId for the first page.
+         */
+        public static Uri buildPageUri(long afterId, int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER, String.valueOf(afterId))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * Build the URI to update the car with the given URI only if it still has the given
+         * {@link #COLUMN_CAR_VERSION}, i.e. nobody else changed it since it was read.
+         */
+        public static Uri buildVersionedUri(Uri carUri, long version) {
+            return carUri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_VERSION, String.valueOf(version))
+                    .build();
+        }
+
+        /** The content URI to search the cars by name and supplier */
+        public static final Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * Build the URI returning at most limit cars whose name or supplier contain words
+         * starting with the words of the given text. Cars matching on their name come first.
+         */
+        public static Uri buildSearchUri(String query, int limit) {
+            return SEARCH_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_QUERY, query)
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /** Name of the full-text index over the name and supplier of the cars */
+        public static final String FTS_TABLE_NAME = "cars_fts";
+
         /** Name of database table for cars */
         public static final String  TABLE_NAME = "cars";
 
+        /**
+         * Name of the database view of the cars along with the name and email of their
+         * supplier, which is what the cars URIs return.
+         */
+        public static final String VIEW_NAME = "car_details";
+
         /**
          * Unique ID number for the car (only for use in the database table).
          * Type: INTEGER
@@ -80,13 +255,21 @@ public final class CarContract {
         public final static String COLUMN_CAR_QUANTITY = "quantity";
 
         /**
-         * Supplier of the car.
+         * ID of the supplier of the car, in the suppliers table.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_CAR_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * Supplier of the car. It is the name of the supplier in the suppliers table: writing it
+         * links the car to the supplier with this name, which is created if there is none.
          * Type: TEXT
          */
         public final static String COLUMN_CAR_SUPPLIER = "supplier";
 
         /**
-         * Email of the car.
+         * Email of the car. It is the email of the supplier of the car, so writing it changes
+         * the email of all the cars of that supplier.
          * Type: TEXT
          */
         public final static String COLUMN_CAR_EMAIL = "email";
@@ -96,5 +279,299 @@ public final class CarContract {
          * Type: TEXT
          */
         public final static String COLUMN_CAR_IMAGE = "image";
+
+        /**
+         * Thumbnail of the car image, sized for the list rows. Can be null, in which case
+         * {@link #COLUMN_CAR_IMAGE} should be shown instead.
+         * Type: TEXT
+         */
+        public final static String COLUMN_CAR_THUMBNAIL = "thumbnail";
+
+        /**
+         * Medium sized rendition of the car image, sized for the editor. Can be null, in which
+         * case {@link #COLUMN_CAR_IMAGE} should be shown instead.
+         * Type: TEXT
+         */
+        public final static String COLUMN_CAR_EDITOR_IMAGE = "editor_image";
+
+        /**
+         * Version of the car, moved forward by the provider on every change of the car.
+         * It can't be written, but only given to {@link #buildVersionedUri(Uri, long)}.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_CAR_VERSION = "version";
+    }
+
+    /**
+     * Inner class that defines constant values for the suppliers database table.
+     * Each entry in the table represents a single supplier, shared by all of its cars.
+     */
+    public static abstract class SupplierEntry implements BaseColumns {
+
+        /** The content URI to access the supplier data in the provider */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single supplier.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * Build the URI of the cars of the supplier with the given ID. They are found through
+         * the index on {@link CarEntry#COLUMN_CAR_SUPPLIER_ID}.
+         */
+        public static Uri buildCarsUri(long supplierId) {
+            return ContentUris.withAppendedId(CONTENT_URI, supplierId).buildUpon()
+                    .appendPath(PATH_CARS)
+                    .build();
+        }
+
+        /** Name of database table for suppliers */
+        public static final String TABLE_NAME = "suppliers";
+
+        /**
+         * Unique ID number for the supplier (only for use in the database table).
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+
+        /**
+         * Name of the supplier, unique regardless of case.
+         * Type: TEXT
+         */
+        public final static String COLUMN_SUPPLIER_NAME = "name";
+
+        /**
+         * Email of the supplier, where the orders are sent.
+         * Type: TEXT
+         */
+        public final static String COLUMN_SUPPLIER_EMAIL = "email";
+    }
+
+    /**
+     * Inner class that defines constant values for the totals of the inventory. They are read
+     * from a single summary row, kept up to date by the database as the cars change.
+     */
+    public static abstract class StatsEntry implements BaseColumns {
+
+        /** The content URI to read the totals of the inventory */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(CarEntry.CONTENT_URI, PATH_STATS);
+
+        /** The content URI to count the cars running low */
+        public static final Uri LOW_STOCK_URI = Uri.withAppendedPath(CarEntry.CONTENT_URI, PATH_LOW_STOCK);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} and {@link #LOW_STOCK_URI}, a single row.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        /**
+         * Build the URI of the totals of the inventory, along with the number of cars having
+         * fewer units than the threshold in {@link #COLUMN_LOW_STOCK_COUNT}.
+         */
+        public static Uri buildStatsUri(int threshold) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_THRESHOLD, String.valueOf(threshold))
+                    .build();
+        }
+
+        /**
+         * Build the URI counting the cars having fewer units than the threshold.
+         */
+        public static Uri buildLowStockUri(int threshold) {
+            return LOW_STOCK_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_THRESHOLD, String.valueOf(threshold))
+                    .build();
+        }
+
+        /** Name of database table holding the summary row */
+        public static final String TABLE_NAME = "car_stats";
+
+        /** ID of the summary row */
+        public static final long SUMMARY_ID = 1;
+
+        /**
+         * Number of cars.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_CAR_COUNT = "car_count";
+
+        /**
+         * Number of units of all the cars.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TOTAL_QUANTITY = "total_quantity";
+
+        /**
+         * Value of all the units, the sum of price times quantity of every car.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TOTAL_VALUE = "total_value";
+
+        /**
+         * Number of cars having fewer units than the threshold. Only computed when the URI
+         * gives a threshold, it isn't stored.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_LOW_STOCK_COUNT = "low_stock_count";
+    }
+
+    /**
+     * Inner class that defines constant values for the cars to reorder. Each row is a car
+     * running low along with its supplier and its recent sales, and the rows of a supplier
+     * follow each other, so the orders can be written in a single pass.
+     */
+    public static abstract class ReorderEntry implements BaseColumns {
+
+        /** The content URI to read the cars to reorder */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(CarEntry.CONTENT_URI, PATH_REORDER);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of cars to reorder.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_REORDER;
+
+        /**
+         * Build the URI of the cars having fewer units than the threshold, with the units of
+         * each sold since the given time in {@link #COLUMN_RECENT_UNITS}.
+         */
+        public static Uri buildReorderUri(int threshold, long sinceMillis) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_THRESHOLD, String.valueOf(threshold))
+                    .appendQueryParameter(QUERY_PARAMETER_SINCE, String.valueOf(sinceMillis))
+                    .build();
+        }
+
+        /**
+         * ID of the car.
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+
+        /** Name, quantity and supplier of the car, as in {@link CarEntry} */
+        public final static String COLUMN_CAR_NAME = CarEntry.COLUMN_CAR_NAME;
+        public final static String COLUMN_CAR_QUANTITY = CarEntry.COLUMN_CAR_QUANTITY;
+        public final static String COLUMN_CAR_SUPPLIER_ID = CarEntry.COLUMN_CAR_SUPPLIER_ID;
+        public final static String COLUMN_CAR_SUPPLIER = CarEntry.COLUMN_CAR_SUPPLIER;
+        public final static String COLUMN_CAR_EMAIL = CarEntry.COLUMN_CAR_EMAIL;
+
+        /**
+         * Units of the car sold since the time given by the URI, according to the sales ledger.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_RECENT_UNITS = "recent_units";
+    }
+
+    /**
+     * Inner class that defines constant values for the sales ledger, and the totals computed
+     * from it. Each entry of the ledger is a single sale, appended when a car is sold.
+     * <p>
+     * The totals by car, by day and by supplier are kept up to date as the sales are appended,
+     * so reports read them instead of the ledger. Compacting the ledger, by deleting the old
+     * sales through {@link #buildCompactUri(long)}, leaves the totals untouched.
+     */
+    public static abstract class SalesEntry implements BaseColumns {
+
+        /** The content URI of the sales ledger. It can only be compacted, not queried. */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SALES);
+
+        /** The content URI of the sales totals by car */
+        public static final Uri BY_CAR_URI = Uri.withAppendedPath(CONTENT_URI, PATH_BY_CAR);
+
+        /** The content URI of the sales totals by day */
+        public static final Uri BY_DAY_URI = Uri.withAppendedPath(CONTENT_URI, PATH_BY_DAY);
+
+        /** The content URI of the sales totals by supplier */
+        public static final Uri BY_SUPPLIER_URI = Uri.withAppendedPath(CONTENT_URI, PATH_BY_SUPPLIER);
+
+        /**
+         * The MIME type of the sales totals URIs.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SALES;
+
+        /**
+         * Build the URI to delete the sales made before the given time from the ledger.
+         */
+        public static Uri buildCompactUri(long beforeMillis) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_BEFORE, String.valueOf(beforeMillis))
+                    .build();
+        }
+
+        /** Name of database table of the sales ledger */
+        public static final String TABLE_NAME = "sales";
+
+        /** Name of database table of the sales totals by car */
+        public static final String TABLE_BY_CAR = "sales_by_car";
+
+        /** Name of database table of the sales totals by day */
+        public static final String TABLE_BY_DAY = "sales_by_day";
+
+        /** Name of database table of the sales totals by supplier */
+        public static final String TABLE_BY_SUPPLIER = "sales_by_supplier";
+
+        /**
+         * ID of the car sold. Key of the totals by car.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_CAR_ID = "car_id";
+
+        /**
+         * Number of units sold.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_AMOUNT = "amount";
+
+        /**
+         * Price of a unit when it was sold.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_UNIT_PRICE = "unit_price";
+
+        /**
+         * Supplier of the car when it was sold. Key of the totals by supplier.
+         * Type: TEXT
+         */
+        public final static String COLUMN_SUPPLIER = "supplier";
+
+        /**
+         * Time of the sale, in milliseconds since the epoch.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_SOLD_AT = "sold_at";
+
+        /**
+         * Day of the sale, in days since the epoch in the local time zone. Key of the totals by day.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_DAY = "day";
+
+        /**
+         * Number of units sold, in the totals.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_UNITS = "units";
+
+        /**
+         * Sum of the units sold times their price, in the totals.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_REVENUE = "revenue";
+
+        /**
+         * Number of sales, in the totals.
+         * Type: INTEGER
+         */
+        public final static String COLUMN_SALE_COUNT = "sale_count";
     }
 }
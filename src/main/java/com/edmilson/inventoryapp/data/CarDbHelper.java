@@ -1,27 +1,339 @@
 package com.edmilson.inventoryapp.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+import com.edmilson.inventoryapp.data.CarContract.SalesEntry;
+import com.edmilson.inventoryapp.data.CarContract.StatsEntry;
+import com.edmilson.inventoryapp.data.CarContract.SupplierEntry;
 
 public class CarDbHelper extends SQLiteOpenHelper {
 
     /** Name of the database file */
-    private static final String DATABASE_NAME = "carshop.db";
+    static final String DATABASE_NAME = "carshop.db";
 
     /**
-     * Database version. If you change the database schema, you must increment the database version.
+     * Tuning of the database connections.
      */
-    private static final int DATABASE_VERSION = 1;
+    public static final class Config {
+
+        /** The configuration used by the app */
+        public static final Config DEFAULT = new Config(true, 4096, 2048, 1000);
+
+        /**
+         * With write-ahead logging, the list can be read while a sale or an edit is being
+         * written, instead of one waiting for the other.
+         */
+        final boolean writeAheadLogging;
+
+        /**
+         * Size of a database page, in bytes. It can only be set before the database is created,
+         * it is ignored for an existing database.
+         */
+        final int pageSize;
+
+        /**
+         * Size of the page cache, in KB. It is set on the connection opened by the helper, the
+         * other connections of the pool which read in parallel keep the default size.
+         */
+        final int cacheSizeKb;
+
+        /**
+         * Number of pages the write-ahead log may grow to before it is copied back into the
+         * database, or 0 to only do it on {@link #checkpoint()}.
+         */
+        final int autoCheckpointPages;
+
+        public Config(boolean writeAheadLogging, int pageSize, int cacheSizeKb, int autoCheckpointPages) {
+            if (Integer.bitCount(pageSize) != 1 || pageSize < 512 || pageSize > 65536) {
+                throw new IllegalArgumentException("Page size must be a power of 2 between 512 and 65536");
+            }
+            if (cacheSizeKb <= 0 || autoCheckpointPages < 0) {
+                throw new IllegalArgumentException("Cache size and checkpoint pages must be positive");
+            }
+            this.writeAheadLogging = writeAheadLogging;
+            this.pageSize = pageSize;
+            this.cacheSizeKb = cacheSizeKb;
+            this.autoCheckpointPages = autoCheckpointPages;
+        }
+    }
+
+    private final Config mConfig;
+
+    /** Compiled statements of the writable database, dropped when it is upgraded or closed */
+    private final StatementCache mStatements = new StatementCache();
+
+    /**
+     * A single step of the schema upgrade path. It brings a database at version
+     * {@link #version} - 1 to {@link #version}, keeping all of its data.
+     */
+    abstract static class Migration {
+
+        /** Database version reached once this migration has been applied */
+        final int version;
+
+        Migration(int version) {
+            this.version = version;
+        }
+
+        /**
+         * Apply the schema changes of this version. Called inside the upgrade transaction.
+         */
+        abstract void migrate(SQLiteDatabase db);
+    }
+
+    /**
+     * All the migrations, in version order. To change the database schema, add a new migration
+     * at the end of this list. Never change a migration that has already been released.
+     */
+    private static final Migration[] MIGRATIONS = {
+            // Version 2 added the thumbnail and editor renditions of the car image
+            new Migration(2) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE " + CarEntry.TABLE_NAME + " ADD COLUMN "
+                            + CarEntry.COLUMN_CAR_THUMBNAIL + " TEXT");
+                    db.execSQL("ALTER TABLE " + CarEntry.TABLE_NAME + " ADD COLUMN "
+                            + CarEntry.COLUMN_CAR_EDITOR_IMAGE + " TEXT");
+                }
+            },
+            // Version 3 added the indexes used to search, sort and filter the cars
+            new Migration(3) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createIndex(db, CarEntry.COLUMN_CAR_NAME);
+                    createIndex(db, CarEntry.COLUMN_CAR_SUPPLIER);
+                    createIndex(db, CarEntry.COLUMN_CAR_PRICE);
+                }
+            },
+            // Version 4 added the full-text index used to search the cars by name and supplier
+            new Migration(4) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    // The index doesn't keep a copy of the text, it reads it from the cars table
+                    db.execSQL("CREATE VIRTUAL TABLE " + CarEntry.FTS_TABLE_NAME + " USING fts4("
+                            + "content=\"" + CarEntry.TABLE_NAME + "\", "
+                            + CarEntry.COLUMN_CAR_NAME + ", "
+                            + CarEntry.COLUMN_CAR_SUPPLIER + ");");
+                    createFtsTriggers(db);
+                    // Index the cars already in the database
+                    db.execSQL("INSERT INTO " + CarEntry.FTS_TABLE_NAME + "(" + CarEntry.FTS_TABLE_NAME
+                            + ") VALUES('rebuild');");
+                }
+            },
+            // Version 5 added the summary row of the inventory totals, and the index used to
+            // count the cars running low
+            new Migration(5) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE " + StatsEntry.TABLE_NAME + " ("
+                            + StatsEntry._ID + " INTEGER PRIMARY KEY CHECK (" + StatsEntry._ID + " = "
+                            + StatsEntry.SUMMARY_ID + "), "
+                            + StatsEntry.COLUMN_CAR_COUNT + " INTEGER NOT NULL, "
+                            + StatsEntry.COLUMN_TOTAL_QUANTITY + " INTEGER NOT NULL, "
+                            + StatsEntry.COLUMN_TOTAL_VALUE + " INTEGER NOT NULL);");
+                    // Start from the totals of the cars already in the database
+                    db.execSQL("INSERT INTO " + StatsEntry.TABLE_NAME + " SELECT " + StatsEntry.SUMMARY_ID
+                            + ", COUNT(*), IFNULL(SUM(" + CarEntry.COLUMN_CAR_QUANTITY + "), 0), "
+                            + "IFNULL(SUM(" + CarEntry.COLUMN_CAR_PRICE + " * " + CarEntry.COLUMN_CAR_QUANTITY
+                            + "), 0) FROM " + CarEntry.TABLE_NAME + ";");
+                    createStatsTriggers(db);
+                    createIndex(db, CarEntry.COLUMN_CAR_QUANTITY);
+                }
+            },
+            // Version 6 added the sales ledger and its totals by car, day and supplier
+            new Migration(6) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE " + SalesEntry.TABLE_NAME + " ("
+                            + SalesEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + SalesEntry.COLUMN_CAR_ID + " INTEGER NOT NULL, "
+                            + SalesEntry.COLUMN_AMOUNT + " INTEGER NOT NULL, "
+                            + SalesEntry.COLUMN_UNIT_PRICE + " INTEGER NOT NULL, "
+                            + SalesEntry.COLUMN_SUPPLIER + " TEXT NOT NULL, "
+                            + SalesEntry.COLUMN_SOLD_AT + " INTEGER NOT NULL, "
+                            + SalesEntry.COLUMN_DAY + " INTEGER NOT NULL);");
+                    // Used to find the old sales when compacting the ledger
+                    db.execSQL("CREATE INDEX " + SalesEntry.TABLE_NAME + "_" + SalesEntry.COLUMN_SOLD_AT
+                            + "_idx ON " + SalesEntry.TABLE_NAME + " (" + SalesEntry.COLUMN_SOLD_AT + ");");
+
+                    createRollupTable(db, SalesEntry.TABLE_BY_CAR, SalesEntry.COLUMN_CAR_ID + " INTEGER");
+                    createRollupTable(db, SalesEntry.TABLE_BY_DAY, SalesEntry.COLUMN_DAY + " INTEGER");
+                    createRollupTable(db, SalesEntry.TABLE_BY_SUPPLIER, SalesEntry.COLUMN_SUPPLIER + " TEXT");
+
+                    // Every sale appended to the ledger is added to the totals. There is no
+                    // trigger on delete, so compacting the ledger leaves the totals as they are.
+                    db.execSQL("CREATE TRIGGER " + SalesEntry.TABLE_NAME + "_after_insert AFTER INSERT ON "
+                            + SalesEntry.TABLE_NAME + " BEGIN "
+                            + addToRollup(SalesEntry.TABLE_BY_CAR, SalesEntry.COLUMN_CAR_ID)
+                            + addToRollup(SalesEntry.TABLE_BY_DAY, SalesEntry.COLUMN_DAY)
+                            + addToRollup(SalesEntry.TABLE_BY_SUPPLIER, SalesEntry.COLUMN_SUPPLIER)
+                            + "END;");
+                }
+            },
+            // Version 7 moved the supplier name and email of the cars to a table of their own,
+            // so each supplier is stored once and its cars are found through an index
+            new Migration(7) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                            + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL UNIQUE COLLATE NOCASE, "
+                            + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " TEXT NOT NULL);");
+                    // One supplier per name, ignoring case and spaces around it. When its cars
+                    // don't agree on the email, the one of the most recent car wins.
+                    db.execSQL("INSERT OR IGNORE INTO " + SupplierEntry.TABLE_NAME + " ("
+                            + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_EMAIL
+                            + ") SELECT TRIM(" + CarEntry.COLUMN_CAR_SUPPLIER + "), " + CarEntry.COLUMN_CAR_EMAIL
+                            + " FROM " + CarEntry.TABLE_NAME + " ORDER BY " + CarEntry._ID + " DESC;");
+
+                    // SQLite can't drop columns, so the cars are copied to a new table
+                    String carsNew = CarEntry.TABLE_NAME + "_new";
+                    db.execSQL("CREATE TABLE " + carsNew + " ("
+                            + CarEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + CarEntry.COLUMN_CAR_NAME + " TEXT NOT NULL, "
+                            + CarEntry.COLUMN_CAR_PRICE + " INTEGER NOT NULL, "
+                            + CarEntry.COLUMN_CAR_QUANTITY + " INTEGER NOT NULL, "
+                            + CarEntry.COLUMN_CAR_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                            + SupplierEntry.TABLE_NAME + "(" + SupplierEntry._ID + "), "
+                            + CarEntry.COLUMN_CAR_IMAGE + " TEXT NOT NULL, "
+                            + CarEntry.COLUMN_CAR_THUMBNAIL + " TEXT, "
+                            + CarEntry.COLUMN_CAR_EDITOR_IMAGE + " TEXT);");
+                    db.execSQL("INSERT INTO " + carsNew + " SELECT c." + CarEntry._ID
+                            + ", c." + CarEntry.COLUMN_CAR_NAME
+                            + ", c." + CarEntry.COLUMN_CAR_PRICE
+                            + ", c." + CarEntry.COLUMN_CAR_QUANTITY
+                            + ", s." + SupplierEntry._ID
+                            + ", c." + CarEntry.COLUMN_CAR_IMAGE
+                            + ", c." + CarEntry.COLUMN_CAR_THUMBNAIL
+                            + ", c." + CarEntry.COLUMN_CAR_EDITOR_IMAGE
+                            + " FROM " + CarEntry.TABLE_NAME + " c JOIN " + SupplierEntry.TABLE_NAME
+                            + " s ON s." + SupplierEntry.COLUMN_SUPPLIER_NAME + " = TRIM(c."
+                            + CarEntry.COLUMN_CAR_SUPPLIER + ");");
+                    // Keep the last ID handed out, so the IDs of deleted cars are never reused
+                    db.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + carsNew + "';");
+                    db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT '" + carsNew
+                            + "', seq FROM sqlite_sequence WHERE name = '" + CarEntry.TABLE_NAME + "';");
+                    // Dropping the table drops its indexes and triggers too
+                    db.execSQL("DROP TABLE " + CarEntry.TABLE_NAME + ";");
+                    db.execSQL("ALTER TABLE " + carsNew + " RENAME TO " + CarEntry.TABLE_NAME + ";");
+
+                    createIndex(db, CarEntry.COLUMN_CAR_NAME);
+                    createIndex(db, CarEntry.COLUMN_CAR_PRICE);
+                    createIndex(db, CarEntry.COLUMN_CAR_QUANTITY);
+                    createIndex(db, CarEntry.COLUMN_CAR_SUPPLIER_ID);
+                    createStatsTriggers(db);
+
+                    // The supplier name is no longer in the cars table, so the full-text index
+                    // keeps its own copy of the text instead of reading it from there
+                    db.execSQL("DROP TABLE " + CarEntry.FTS_TABLE_NAME + ";");
+                    db.execSQL("CREATE VIRTUAL TABLE " + CarEntry.FTS_TABLE_NAME + " USING fts4("
+                            + CarEntry.COLUMN_CAR_NAME + ", " + CarEntry.COLUMN_CAR_SUPPLIER + ");");
+                    createSupplierFtsTriggers(db);
+
+                    db.execSQL("CREATE VIEW " + CarEntry.VIEW_NAME + " AS SELECT c." + CarEntry._ID
+                            + " AS " + CarEntry._ID
+                            + ", c." + CarEntry.COLUMN_CAR_NAME + " AS " + CarEntry.COLUMN_CAR_NAME
+                            + ", c." + CarEntry.COLUMN_CAR_PRICE + " AS " + CarEntry.COLUMN_CAR_PRICE
+                            + ", c." + CarEntry.COLUMN_CAR_QUANTITY + " AS " + CarEntry.COLUMN_CAR_QUANTITY
+                            + ", c." + CarEntry.COLUMN_CAR_SUPPLIER_ID + " AS " + CarEntry.COLUMN_CAR_SUPPLIER_ID
+                            + ", s." + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + CarEntry.COLUMN_CAR_SUPPLIER
+                            + ", s." + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " AS " + CarEntry.COLUMN_CAR_EMAIL
+                            + ", c." + CarEntry.COLUMN_CAR_IMAGE + " AS " + CarEntry.COLUMN_CAR_IMAGE
+                            + ", c." + CarEntry.COLUMN_CAR_THUMBNAIL + " AS " + CarEntry.COLUMN_CAR_THUMBNAIL
+                            + ", c." + CarEntry.COLUMN_CAR_EDITOR_IMAGE + " AS " + CarEntry.COLUMN_CAR_EDITOR_IMAGE
+                            + " FROM " + CarEntry.TABLE_NAME + " c JOIN " + SupplierEntry.TABLE_NAME
+                            + " s ON s." + SupplierEntry._ID + " = c." + CarEntry.COLUMN_CAR_SUPPLIER_ID + ";");
+
+                    // Index the cars already in the database
+                    db.execSQL("INSERT INTO " + CarEntry.FTS_TABLE_NAME + " (docid, "
+                            + CarEntry.COLUMN_CAR_NAME + ", " + CarEntry.COLUMN_CAR_SUPPLIER + ") SELECT "
+                            + CarEntry._ID + ", " + CarEntry.COLUMN_CAR_NAME + ", " + CarEntry.COLUMN_CAR_SUPPLIER
+                            + " FROM " + CarEntry.VIEW_NAME + ";");
+                }
+            },
+            // Version 8 added the version of the cars, so an editor can tell whether a car
+            // changed since it read it
+            new Migration(8) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE " + CarEntry.TABLE_NAME + " ADD COLUMN "
+                            + CarEntry.COLUMN_CAR_VERSION + " INTEGER NOT NULL DEFAULT 0;");
+
+                    // The columns of a view are fixed when it is created
+                    db.execSQL("DROP VIEW " + CarEntry.VIEW_NAME + ";");
+                    db.execSQL("CREATE VIEW " + CarEntry.VIEW_NAME + " AS SELECT c." + CarEntry._ID
+                            + " AS " + CarEntry._ID
+                            + ", c." + CarEntry.COLUMN_CAR_NAME + " AS " + CarEntry.COLUMN_CAR_NAME
+                            + ", c." + CarEntry.COLUMN_CAR_PRICE + " AS " + CarEntry.COLUMN_CAR_PRICE
+                            + ", c." + CarEntry.COLUMN_CAR_QUANTITY + " AS " + CarEntry.COLUMN_CAR_QUANTITY
+                            + ", c." + CarEntry.COLUMN_CAR_SUPPLIER_ID + " AS " + CarEntry.COLUMN_CAR_SUPPLIER_ID
+                            + ", s." + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + CarEntry.COLUMN_CAR_SUPPLIER
+                            + ", s." + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " AS " + CarEntry.COLUMN_CAR_EMAIL
+                            + ", c." + CarEntry.COLUMN_CAR_IMAGE + " AS " + CarEntry.COLUMN_CAR_IMAGE
+                            + ", c." + CarEntry.COLUMN_CAR_THUMBNAIL + " AS " + CarEntry.COLUMN_CAR_THUMBNAIL
+                            + ", c." + CarEntry.COLUMN_CAR_EDITOR_IMAGE + " AS " + CarEntry.COLUMN_CAR_EDITOR_IMAGE
+                            + ", c." + CarEntry.COLUMN_CAR_VERSION + " AS " + CarEntry.COLUMN_CAR_VERSION
+                            + " FROM " + CarEntry.TABLE_NAME + " c JOIN " + SupplierEntry.TABLE_NAME
+                            + " s ON s." + SupplierEntry._ID + " = c." + CarEntry.COLUMN_CAR_SUPPLIER_ID + ";");
+                }
+            }
+    };
+
+    /**
+     * Database version. It is the version of the last migration in {@link #MIGRATIONS}.
+     */
+    private static final int DATABASE_VERSION = MIGRATIONS[MIGRATIONS.length - 1].version;
 
     /**
      * Constructs a new instance of {@link CarDbHelper}.
      * @param context of the app
      */
     public CarDbHelper (Context context){
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, Config.DEFAULT);
+    }
 
+    /**
+     * Constructs a new instance of {@link CarDbHelper} with its own database file and tuning,
+     * e.g. to compare configurations.
+     */
+    CarDbHelper(Context context, String name, Config config) {
+        super(context, name, null, DATABASE_VERSION);
+        mConfig = config;
+        // Write-ahead logging is turned on in onConfigure, after the page size is set
+    }
+
+    /**
+     * This is called when a connection is opened, before the database is created or upgraded.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // Every car must belong to a supplier which exists
+        db.setForeignKeyConstraintsEnabled(true);
+        // The page size only applies to a database which is still empty, and not in WAL mode:
+        // it has to be set before write-ahead logging is enabled
+        pragma(db, "page_size = " + mConfig.pageSize);
+        if (mConfig.writeAheadLogging) {
+            db.enableWriteAheadLogging();
+            pragma(db, "wal_autocheckpoint = " + mConfig.autoCheckpointPages);
+        }
+        // A negative size is in KB instead of pages. onConfigure is only called for the primary
+        // connection, the pragma doesn't reach the connections opened later for the readers
+        pragma(db, "cache_size = -" + mConfig.cacheSizeKb);
+    }
+
+    /**
+     * Copy the content of the write-ahead log back into the database, without waiting for the
+     * readers. Call it after large writes, so that the log doesn't keep on growing.
+     */
+    public void checkpoint() {
+        if (mConfig.writeAheadLogging) {
+            pragma(getWritableDatabase(), "wal_checkpoint(PASSIVE)");
+        }
     }
 
     /**
@@ -29,7 +341,7 @@ public class CarDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // Create a String that contains the SQL statement to create the cars table
+        // Create a String that contains the SQL statement to create the version 1 cars table
         String SQL_CREATE_CARS_TABLE = "CREATE TABLE " + CarEntry.TABLE_NAME + " ("
                 + CarEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + CarEntry.COLUMN_CAR_NAME + " TEXT NOT NULL, "
@@ -41,6 +353,10 @@ public class CarDbHelper extends SQLiteOpenHelper {
 
         //Execute the SQL statement
         db.execSQL(SQL_CREATE_CARS_TABLE);
+
+        // Then bring it to the current version through the same path as an upgrade,
+        // so new and upgraded databases always end up with the same schema
+        migrate(db, 1, DATABASE_VERSION);
     }
 
     /**
@@ -48,6 +364,181 @@ public class CarDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to be done here.
+        // Statements compiled against the old schema must not be used anymore
+        mStatements.clear();
+        migrate(db, oldVersion, newVersion);
+    }
+
+    @Override
+    public synchronized void close() {
+        mStatements.clear();
+        super.close();
+    }
+
+    /**
+     * Take a statement compiled from the given SQL on the writable database, reusing one
+     * compiled before if possible. Give it back through {@link #releaseStatement} once done,
+     * in a finally block.
+     */
+    SQLiteStatement acquireStatement(String sql) {
+        return mStatements.acquire(getWritableDatabase(), sql);
+    }
+
+    /**
+     * Give back a statement taken by {@link #acquireStatement(String)}.
+     */
+    void releaseStatement(SQLiteStatement statement) {
+        mStatements.release(statement);
+    }
+
+    /**
+     * Apply, in order, every migration after fromVersion up to and including toVersion.
+     */
+    static void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version > fromVersion && migration.version <= toVersion) {
+                migration.migrate(db);
+            }
+        }
+    }
+
+    /**
+     * Return the migration reaching the given version, so it can be exercised on its own.
+     */
+    static Migration getMigration(int version) {
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version == version) {
+                return migration;
+            }
+        }
+        throw new IllegalArgumentException("No migration to version " + version);
+    }
+
+    /**
+     * Create the triggers keeping the full-text index in sync with the cars table. Sales only
+     * change the quantity, so updates only touch the index when the name or supplier change.
+     */
+    private static void createFtsTriggers(SQLiteDatabase db) {
+        String fts = CarEntry.FTS_TABLE_NAME;
+        String columns = "docid, " + CarEntry.COLUMN_CAR_NAME + ", " + CarEntry.COLUMN_CAR_SUPPLIER;
+        String newValues = "new." + CarEntry._ID + ", new." + CarEntry.COLUMN_CAR_NAME
+                + ", new." + CarEntry.COLUMN_CAR_SUPPLIER;
+        String updateOf = " OF " + CarEntry.COLUMN_CAR_NAME + ", " + CarEntry.COLUMN_CAR_SUPPLIER;
+
+        db.execSQL("CREATE TRIGGER " + fts + "_before_update BEFORE UPDATE" + updateOf
+                + " ON " + CarEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + fts + " WHERE docid = old." + CarEntry._ID + "; END;");
+        db.execSQL("CREATE TRIGGER " + fts + "_before_delete BEFORE DELETE ON " + CarEntry.TABLE_NAME
+                + " BEGIN DELETE FROM " + fts + " WHERE docid = old." + CarEntry._ID + "; END;");
+        db.execSQL("CREATE TRIGGER " + fts + "_after_update AFTER UPDATE" + updateOf
+                + " ON " + CarEntry.TABLE_NAME + " BEGIN "
+                + "INSERT INTO " + fts + "(" + columns + ") VALUES(" + newValues + "); END;");
+        db.execSQL("CREATE TRIGGER " + fts + "_after_insert AFTER INSERT ON " + CarEntry.TABLE_NAME
+                + " BEGIN INSERT INTO " + fts + "(" + columns + ") VALUES(" + newValues + "); END;");
+    }
+
+    /**
+     * Create the triggers keeping the full-text index in sync with the cars and suppliers
+     * tables, since version 7. The supplier name is copied from the suppliers table, and
+     * renaming a supplier renames it in the index entries of all of its cars.
+     */
+    private static void createSupplierFtsTriggers(SQLiteDatabase db) {
+        String fts = CarEntry.FTS_TABLE_NAME;
+        String supplierName = "(SELECT " + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM "
+                + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry._ID + " = new."
+                + CarEntry.COLUMN_CAR_SUPPLIER_ID + ")";
+
+        db.execSQL("CREATE TRIGGER " + fts + "_after_insert AFTER INSERT ON " + CarEntry.TABLE_NAME
+                + " BEGIN INSERT INTO " + fts + " (docid, " + CarEntry.COLUMN_CAR_NAME + ", "
+                + CarEntry.COLUMN_CAR_SUPPLIER + ") VALUES (new." + CarEntry._ID + ", new."
+                + CarEntry.COLUMN_CAR_NAME + ", " + supplierName + "); END;");
+        db.execSQL("CREATE TRIGGER " + fts + "_after_delete AFTER DELETE ON " + CarEntry.TABLE_NAME
+                + " BEGIN DELETE FROM " + fts + " WHERE docid = old." + CarEntry._ID + "; END;");
+        db.execSQL("CREATE TRIGGER " + fts + "_after_update AFTER UPDATE OF " + CarEntry.COLUMN_CAR_NAME
+                + ", " + CarEntry.COLUMN_CAR_SUPPLIER_ID + " ON " + CarEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + fts + " SET " + CarEntry.COLUMN_CAR_NAME + " = new." + CarEntry.COLUMN_CAR_NAME
+                + ", " + CarEntry.COLUMN_CAR_SUPPLIER + " = " + supplierName
+                + " WHERE docid = new." + CarEntry._ID + "; END;");
+        db.execSQL("CREATE TRIGGER " + SupplierEntry.TABLE_NAME + "_fts_after_update AFTER UPDATE OF "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " ON " + SupplierEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + fts + " SET " + CarEntry.COLUMN_CAR_SUPPLIER + " = new."
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " WHERE docid IN (SELECT " + CarEntry._ID
+                + " FROM " + CarEntry.TABLE_NAME + " WHERE " + CarEntry.COLUMN_CAR_SUPPLIER_ID
+                + " = new." + SupplierEntry._ID + "); END;");
+    }
+
+    /**
+     * Create the triggers keeping the summary row in sync with the cars table. Each write only
+     * adds the difference it makes, so the totals never need the whole table to be read.
+     */
+    private static void createStatsTriggers(SQLiteDatabase db) {
+        String quantity = CarEntry.COLUMN_CAR_QUANTITY;
+        String price = CarEntry.COLUMN_CAR_PRICE;
+        String update = "UPDATE " + StatsEntry.TABLE_NAME + " SET ";
+        String where = " WHERE " + StatsEntry._ID + " = " + StatsEntry.SUMMARY_ID + "; END;";
+
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_insert AFTER INSERT ON "
+                + CarEntry.TABLE_NAME + " BEGIN " + update
+                + StatsEntry.COLUMN_CAR_COUNT + " = " + StatsEntry.COLUMN_CAR_COUNT + " + 1, "
+                + StatsEntry.COLUMN_TOTAL_QUANTITY + " = " + StatsEntry.COLUMN_TOTAL_QUANTITY + " + new." + quantity + ", "
+                + StatsEntry.COLUMN_TOTAL_VALUE + " = " + StatsEntry.COLUMN_TOTAL_VALUE
+                + " + new." + price + " * new." + quantity + where);
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_delete AFTER DELETE ON "
+                + CarEntry.TABLE_NAME + " BEGIN " + update
+                + StatsEntry.COLUMN_CAR_COUNT + " = " + StatsEntry.COLUMN_CAR_COUNT + " - 1, "
+                + StatsEntry.COLUMN_TOTAL_QUANTITY + " = " + StatsEntry.COLUMN_TOTAL_QUANTITY + " - old." + quantity + ", "
+                + StatsEntry.COLUMN_TOTAL_VALUE + " = " + StatsEntry.COLUMN_TOTAL_VALUE
+                + " - old." + price + " * old." + quantity + where);
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_update AFTER UPDATE OF "
+                + price + ", " + quantity + " ON " + CarEntry.TABLE_NAME + " BEGIN " + update
+                + StatsEntry.COLUMN_TOTAL_QUANTITY + " = " + StatsEntry.COLUMN_TOTAL_QUANTITY
+                + " + new." + quantity + " - old." + quantity + ", "
+                + StatsEntry.COLUMN_TOTAL_VALUE + " = " + StatsEntry.COLUMN_TOTAL_VALUE
+                + " + new." + price + " * new." + quantity + " - old." + price + " * old." + quantity + where);
+    }
+
+    /**
+     * Create a table of sales totals, with one row per value of the given key column.
+     */
+    private static void createRollupTable(SQLiteDatabase db, String table, String keyColumnDefinition) {
+        db.execSQL("CREATE TABLE " + table + " ("
+                + keyColumnDefinition + " PRIMARY KEY NOT NULL, "
+                + SalesEntry.COLUMN_UNITS + " INTEGER NOT NULL, "
+                + SalesEntry.COLUMN_REVENUE + " INTEGER NOT NULL, "
+                + SalesEntry.COLUMN_SALE_COUNT + " INTEGER NOT NULL);");
+    }
+
+    /**
+     * Return the trigger statements adding the new sale to the totals of its key, creating the
+     * row of the key first if it's the first sale for it.
+     */
+    private static String addToRollup(String table, String keyColumn) {
+        return "INSERT OR IGNORE INTO " + table + " VALUES (new." + keyColumn + ", 0, 0, 0); "
+                + "UPDATE " + table + " SET "
+                + SalesEntry.COLUMN_UNITS + " = " + SalesEntry.COLUMN_UNITS + " + new." + SalesEntry.COLUMN_AMOUNT + ", "
+                + SalesEntry.COLUMN_REVENUE + " = " + SalesEntry.COLUMN_REVENUE
+                + " + new." + SalesEntry.COLUMN_AMOUNT + " * new." + SalesEntry.COLUMN_UNIT_PRICE + ", "
+                + SalesEntry.COLUMN_SALE_COUNT + " = " + SalesEntry.COLUMN_SALE_COUNT + " + 1"
+                + " WHERE " + keyColumn + " = new." + keyColumn + "; ";
+    }
+
+    /**
+     * Run a PRAGMA statement. Some of them return a row, which execSQL doesn't allow.
+     */
+    private static void pragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Create an index on a single column of the cars table.
+     */
+    private static void createIndex(SQLiteDatabase db, String column) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + CarEntry.TABLE_NAME + "_" + column + "_idx ON "
+                + CarEntry.TABLE_NAME + " (" + column + ");");
     }
 }
@@ -1,14 +1,50 @@
 package com.edmilson.inventoryapp.data;
 
+import android.content.ComponentName;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.pm.PackageManager;
+import android.content.pm.ProviderInfo;
+import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Process;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
 import android.util.Log;
+import com.edmilson.inventoryapp.R;
+import com.edmilson.inventoryapp.StartupMetrics;
 import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+import com.edmilson.inventoryapp.data.CarContract.ReorderEntry;
+import com.edmilson.inventoryapp.data.CarContract.SalesEntry;
+import com.edmilson.inventoryapp.data.CarContract.StatsEntry;
+import com.edmilson.inventoryapp.data.CarContract.SupplierEntry;
+import com.edmilson.inventoryapp.image.ImageCache;
+import com.edmilson.inventoryapp.image.ImageLoader;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * {@link ContentProvider} for Cars app.
@@ -24,6 +60,56 @@ public class CarProvider extends ContentProvider {
     /** URI matcher code for the content URI for a single car in the cars table */
     private static final int CAR_ID = 101;
 
+    /** URI matcher code for the content URI to sell a single car of the cars table */
+    private static final int CAR_SELL = 102;
+
+    /** URI matcher code for the content URI to search the cars table */
+    private static final int CAR_SEARCH = 103;
+
+    /** URI matcher code for the content URI of the inventory totals */
+    private static final int CAR_STATS = 104;
+
+    /** URI matcher code for the content URI counting the cars running low */
+    private static final int CAR_LOW_STOCK = 105;
+
+    /** URI matcher code for the content URI of the cars to reorder */
+    private static final int CAR_REORDER = 106;
+
+    /** URI matcher code for the content URI of the sales ledger */
+    private static final int SALES = 200;
+
+    /** URI matcher codes for the content URIs of the sales totals */
+    private static final int SALES_BY_CAR = 201;
+    private static final int SALES_BY_DAY = 202;
+    private static final int SALES_BY_SUPPLIER = 203;
+
+    /** URI matcher code for the content URI for the suppliers table */
+    private static final int SUPPLIERS = 300;
+
+    /** URI matcher code for the content URI for a single supplier in the suppliers table */
+    private static final int SUPPLIER_ID = 301;
+
+    /** URI matcher code for the content URI for the cars of a single supplier */
+    private static final int SUPPLIER_CARS = 302;
+
+    /** Number of cars returned by a search when the URI doesn't give a limit */
+    private static final int DEFAULT_SEARCH_LIMIT = 100;
+
+    /** Weight of a match in each column of the full-text index: the name, then the supplier */
+    private static final double[] SEARCH_COLUMN_WEIGHTS = {3.0, 1.0};
+
+    /**
+     * Name of the provider meta-data giving how long change notifications may be held back to
+     * coalesce them, in milliseconds.
+     */
+    private static final String META_DATA_NOTIFY_WINDOW = "com.edmilson.inventoryapp.NOTIFY_WINDOW_MS";
+
+    /** Notification window used when the manifest doesn't give one */
+    private static final int DEFAULT_NOTIFY_WINDOW_MS = 100;
+
+    /** Number of rows written by a batch above which the write-ahead log is checkpointed */
+    private static final int CHECKPOINT_ROWS = 500;
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -50,22 +136,228 @@ public class CarProvider extends ContentProvider {
          * "content://com.edmilson.inventoryapp/cars" doesn't match.
          */
         sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY, CarContract.PATH_CARS + "/#", CAR_ID);
+
+        // The content URI of the form "content://com.edmilson.inventoryapp/cars/#/sell" will maps
+        // to the integer code {@link #CAR_SELL}. Updating it sells units of one single car.
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY,
+                CarContract.PATH_CARS + "/#/" + CarContract.PATH_SELL, CAR_SELL);
+
+        // The content URI of the form "content://com.edmilson.inventoryapp/cars/search" will maps
+        // to the integer code {@link #CAR_SEARCH}. It is queried with the text to search for.
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY,
+                CarContract.PATH_CARS + "/" + CarContract.PATH_SEARCH, CAR_SEARCH);
+
+        // The content URIs of the form "content://com.edmilson.inventoryapp/cars/stats" and
+        // "content://com.edmilson.inventoryapp/cars/low_stock" will maps to the integer codes
+        // {@link #CAR_STATS} and {@link #CAR_LOW_STOCK}. Both return a single row of totals.
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY,
+                CarContract.PATH_CARS + "/" + CarContract.PATH_STATS, CAR_STATS);
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY,
+                CarContract.PATH_CARS + "/" + CarContract.PATH_LOW_STOCK, CAR_LOW_STOCK);
+
+        // The content URI of the form "content://com.edmilson.inventoryapp/cars/reorder" will maps
+        // to the integer code {@link #CAR_REORDER}. It returns the cars running low, by supplier.
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY,
+                CarContract.PATH_CARS + "/" + CarContract.PATH_REORDER, CAR_REORDER);
+
+        // The content URI of the form "content://com.edmilson.inventoryapp/sales" will maps to
+        // the integer code {@link #SALES}, and the URIs of the sales totals under it to their
+        // own codes.
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY, CarContract.PATH_SALES, SALES);
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY,
+                CarContract.PATH_SALES + "/" + CarContract.PATH_BY_CAR, SALES_BY_CAR);
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY,
+                CarContract.PATH_SALES + "/" + CarContract.PATH_BY_DAY, SALES_BY_DAY);
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY,
+                CarContract.PATH_SALES + "/" + CarContract.PATH_BY_SUPPLIER, SALES_BY_SUPPLIER);
+
+        // The content URIs of the form "content://com.edmilson.inventoryapp/suppliers",
+        // "content://com.edmilson.inventoryapp/suppliers/#" and
+        // "content://com.edmilson.inventoryapp/suppliers/#/cars" will maps to the integer codes
+        // {@link #SUPPLIERS}, {@link #SUPPLIER_ID} and {@link #SUPPLIER_CARS}.
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY, CarContract.PATH_SUPPLIERS, SUPPLIERS);
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY, CarContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+        sUriMatcher.addURI(CarContract.CONTENT_AUTHORITY,
+                CarContract.PATH_SUPPLIERS + "/#/" + CarContract.PATH_CARS, SUPPLIER_CARS);
     }
 
+    /** Columns written by {@link #bulkInsert(Uri, ContentValues[])}, in binding order */
+    private static final String[] INSERT_COLUMNS = {
+            CarEntry.COLUMN_CAR_NAME,
+            CarEntry.COLUMN_CAR_PRICE,
+            CarEntry.COLUMN_CAR_QUANTITY,
+            CarEntry.COLUMN_CAR_SUPPLIER_ID,
+            CarEntry.COLUMN_CAR_IMAGE,
+            CarEntry.COLUMN_CAR_THUMBNAIL,
+            CarEntry.COLUMN_CAR_EDITOR_IMAGE};
+
+    /** SQL statement inserting one car, with the values bound in {@link #INSERT_COLUMNS} order */
+    private static final String SQL_INSERT_CAR = buildInsertSql();
+
+    /**
+     * SQL statement selling units of one car. The stock check and the decrement happen in the
+     * same statement, so concurrent sales can neither get lost nor bring the stock below zero.
+     */
+    private static final String SQL_SELL_CAR = "UPDATE " + CarEntry.TABLE_NAME
+            + " SET " + CarEntry.COLUMN_CAR_QUANTITY + " = " + CarEntry.COLUMN_CAR_QUANTITY + " - ?, "
+            + CarEntry.COLUMN_CAR_VERSION + " = " + CarEntry.COLUMN_CAR_VERSION + " + 1"
+            + " WHERE " + CarEntry._ID + " = ? AND " + CarEntry.COLUMN_CAR_QUANTITY + " >= ?";
+
+    /**
+     * SQL statement appending a sale of one car to the ledger, with the price and supplier the
+     * car has at the time of the sale.
+     */
+    private static final String SQL_RECORD_SALE = "INSERT INTO " + SalesEntry.TABLE_NAME + " ("
+            + SalesEntry.COLUMN_CAR_ID + ", " + SalesEntry.COLUMN_AMOUNT + ", "
+            + SalesEntry.COLUMN_UNIT_PRICE + ", " + SalesEntry.COLUMN_SUPPLIER + ", "
+            + SalesEntry.COLUMN_SOLD_AT + ", " + SalesEntry.COLUMN_DAY + ") SELECT "
+            + CarEntry._ID + ", ?, " + CarEntry.COLUMN_CAR_PRICE + ", " + CarEntry.COLUMN_CAR_SUPPLIER + ", ?, ?"
+            + " FROM " + CarEntry.VIEW_NAME + " WHERE " + CarEntry._ID + " = ?";
+
+    /** SQL statement finding a supplier by name, through the unique index on the name */
+    private static final String SQL_FIND_SUPPLIER = "SELECT " + SupplierEntry._ID
+            + " FROM " + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry.COLUMN_SUPPLIER_NAME + " = ?";
+
+    /** SQL statement inserting a supplier */
+    private static final String SQL_INSERT_SUPPLIER = "INSERT INTO " + SupplierEntry.TABLE_NAME + " ("
+            + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_EMAIL + ") VALUES (?, ?)";
+
+    /** SQL statement changing the email of a supplier, only if it is a different one */
+    private static final String SQL_UPDATE_SUPPLIER_EMAIL = "UPDATE " + SupplierEntry.TABLE_NAME
+            + " SET " + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " = ?1 WHERE " + SupplierEntry._ID + " = ?2 AND "
+            + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " <> ?1";
+
+    /** SQL statement setting the quantity of a single car */
+    private static final String SQL_UPDATE_QUANTITY = "UPDATE " + CarEntry.TABLE_NAME
+            + " SET " + CarEntry.COLUMN_CAR_QUANTITY + " = ?, "
+            + CarEntry.COLUMN_CAR_VERSION + " = " + CarEntry.COLUMN_CAR_VERSION + " + 1"
+            + " WHERE " + CarEntry._ID + " = ?";
+
+    /** SQL statement deleting a single car */
+    private static final String SQL_DELETE_CAR = "DELETE FROM " + CarEntry.TABLE_NAME
+            + " WHERE " + CarEntry._ID + " = ?";
+
+    /** Columns of the rows read by the warm-up, the ones the list shows */
+    private static final String[] WARM_UP_PROJECTION = {
+            CarEntry._ID,
+            CarEntry.COLUMN_CAR_NAME,
+            CarEntry.COLUMN_CAR_QUANTITY,
+            CarEntry.COLUMN_CAR_PRICE,
+            CarEntry.COLUMN_CAR_IMAGE,
+            CarEntry.COLUMN_CAR_THUMBNAIL};
+
+    /** Whether the warm-up was started, it only runs once per process */
+    private final AtomicBoolean mWarmUpStarted = new AtomicBoolean();
+
     /** DataBase helper object */
     private CarDbHelper mDbHelper;
 
+    /** Sends the change notifications, coalescing the bursts */
+    private NotificationScheduler mNotifications;
+
+    /** In-memory copy of the cars, serving the plain queries of the list and the editor */
+    private final CarReadModel mReadModel = new CarReadModel();
+
+    /**
+     * Changes made by the batch running on the current thread, or null if no batch is running.
+     * Listeners are notified once, when the batch is committed.
+     */
+    private final ThreadLocal<CarChanges> mBatchChanges = new ThreadLocal<>();
+
     /**
      * Initialize the provider and the database helper object.
      */
     @Override
     public boolean onCreate() {
+        StartupMetrics.mark(StartupMetrics.PROVIDER_CREATED);
         // To access our database, we instantiate our subclass of SQLiteOpenHelper
         // and pass the context, which is the current activity.
         mDbHelper = new CarDbHelper(getContext());
+        mNotifications = new NotificationScheduler(getContext().getContentResolver(), getNotifyWindow());
         return true;
     }
 
+    /**
+     * Handle the methods of {@link CarContract} called through
+     * {@link android.content.ContentResolver#call}.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (CarContract.METHOD_WARM_UP.equals(method)) {
+            // Only the first call of the process does anything, the work is done once
+            if (mWarmUpStarted.compareAndSet(false, true)) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        warmUp();
+                    }
+                }, "CarProvider warm-up").start();
+            }
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Do the work of the first query of the inventory before it is asked for: open the database,
+     * which upgrades it if needed, read the first rows into memory and decode their thumbnails,
+     * so the list finds them all ready. Runs on its own thread.
+     */
+    private void warmUp() {
+        // Don't take the CPU from the main thread, which is drawing the first frame
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        try {
+            mDbHelper.getWritableDatabase();
+            StartupMetrics.mark(StartupMetrics.DATABASE_OPEN);
+
+            // Only the rows fitting on the screen are needed for the first frame, but the first
+            // page query loads the whole read model, so the rest of the list comes from memory
+            Resources resources = getContext().getResources();
+            int width = resources.getDimensionPixelSize(R.dimen.car_thumbnail_width);
+            int height = resources.getDimensionPixelSize(R.dimen.car_thumbnail_height);
+            int visibleRows = resources.getDisplayMetrics().heightPixels / height + 1;
+            List<String> images = new ArrayList<>(visibleRows);
+            Cursor cursor = query(CarEntry.buildPageUri(0, visibleRows), WARM_UP_PROJECTION, null, null, null);
+            try {
+                Car.Columns columns = new Car.Columns(cursor);
+                while (cursor.moveToNext()) {
+                    images.add(Car.fromCursor(cursor, columns).getListImage());
+                }
+            } finally {
+                cursor.close();
+            }
+            StartupMetrics.mark(StartupMetrics.FIRST_PAGE_READY);
+
+            // Decoded at the size of the ImageViews of the list, so the rows find them in memory
+            ImageLoader.getInstance(getContext()).prefetch(images, width, height, new Runnable() {
+                @Override
+                public void run() {
+                    StartupMetrics.mark(StartupMetrics.THUMBNAILS_READY);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Nothing is lost, the first query of the list will do the work, or fail for good.
+            // An exception left uncaught on this thread would kill the app.
+            Log.e(LOG_TAG, "Failed to warm up the database", e);
+        }
+    }
+
+    /**
+     * Read the notification window from the meta-data of the provider in the manifest.
+     */
+    private long getNotifyWindow() {
+        try {
+            ProviderInfo info = getContext().getPackageManager().getProviderInfo(
+                    new ComponentName(getContext(), CarProvider.class), PackageManager.GET_META_DATA);
+            if (info.metaData != null) {
+                return info.metaData.getInt(META_DATA_NOTIFY_WINDOW, DEFAULT_NOTIFY_WINDOW_MS);
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(LOG_TAG, "Provider not found in the manifest", e);
+        }
+        return DEFAULT_NOTIFY_WINDOW_MS;
+    }
+
     /**
      * Perform the query for the given URI. Use the given projection, selection, selection arguments, and sort order.
      */
@@ -82,11 +374,35 @@ public class CarProvider extends ContentProvider {
         int match = sUriMatcher.match(uri);
         switch (match) {
             case CARS:
-                // For the CARS code, query the cars table directly with the given
+                // A page of cars only holds the cars after the given ID, sorted by ID,
+                // so the next page can be found through the primary key without an offset
+                String after = uri.getQueryParameter(CarContract.QUERY_PARAMETER_AFTER);
+                String limit = uri.getQueryParameter(CarContract.QUERY_PARAMETER_LIMIT);
+                if (selection == null && (sortOrder == null || after != null) && canUseReadModel(projection)) {
+                    // A plain list or page of cars comes from memory
+                    cursor = mReadModel.queryPage(database, projection,
+                            after != null ? Long.parseLong(after) : 0,
+                            limit != null ? Integer.parseInt(limit) : -1);
+                    uri = CarEntry.CHANGES_URI;
+                    break;
+                }
+                if (after != null) {
+                    selection = appendSelection(selection, CarEntry._ID + ">?");
+                    selectionArgs = appendSelectionArg(selectionArgs, String.valueOf(Long.parseLong(after)));
+                    sortOrder = CarEntry._ID + " ASC";
+                }
+                if (limit != null) {
+                    limit = String.valueOf(Integer.parseInt(limit));
+                }
+
+                // For the CARS code, query the cars along with their supplier with the given
                 // projection, selection, selection arguments and sort order. The cursor
                 // could contain multiple rows of the cars table.
-                cursor = database.query(CarEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                cursor = database.query(CarEntry.VIEW_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder, limit);
+
+                // Whatever page was asked for, it has to be reloaded when any car changes
+                uri = CarEntry.CHANGES_URI;
                 break;
             case CAR_ID:
                 // For the CAR_ID code, extract out the ID from the URI.
@@ -97,12 +413,67 @@ public class CarProvider extends ContentProvider {
                 // For every "?" in the selection, we need to have an element in the selection
                 // arguments that will fill in the "?". Since we have 1 question mark in the
                 // selection, we have 1 String in the selection arguments String array.
+                if (canUseReadModel(projection)) {
+                    // The car comes from memory
+                    cursor = mReadModel.queryById(database, projection, ContentUris.parseId(uri));
+                    break;
+                }
                 selection = CarEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 // This will perform a query off the cars table where the _id = 3 to return a
                 // cursor containing that row  of the table
-                cursor = database.query(CarEntry.TABLE_NAME, projection, selection, selectionArgs,
+                cursor = database.query(CarEntry.VIEW_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                break;
+            case CAR_SEARCH:
+                cursor = searchCars(database, uri, projection);
+                // Search results have to be reloaded when any car changes
+                uri = CarEntry.CHANGES_URI;
+                break;
+            case CAR_STATS:
+                cursor = queryStats(database, uri);
+                // The totals change with any car
+                uri = CarEntry.CHANGES_URI;
+                break;
+            case CAR_LOW_STOCK:
+                // Counted through the index on the quantity, without reading the cars
+                cursor = database.rawQuery("SELECT COUNT(*) AS " + StatsEntry.COLUMN_LOW_STOCK_COUNT
+                        + " FROM " + CarEntry.TABLE_NAME + " WHERE " + CarEntry.COLUMN_CAR_QUANTITY + " < ?",
+                        new String[]{String.valueOf(getThreshold(uri))});
+                uri = CarEntry.CHANGES_URI;
+                break;
+            case CAR_REORDER:
+                cursor = queryReorder(database, uri);
+                uri = CarEntry.CHANGES_URI;
+                break;
+            case SALES_BY_CAR:
+            case SALES_BY_DAY:
+            case SALES_BY_SUPPLIER:
+                // Reports only read the totals, never the ledger itself
+                cursor = database.query(getRollupTable(match), projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                // A sale always changes the quantity of a car, so the totals are notified with the cars
+                uri = CarEntry.CHANGES_URI;
+                break;
+            case SUPPLIERS:
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
                         null, null, sortOrder);
+                uri = SupplierEntry.CONTENT_URI;
+                break;
+            case SUPPLIER_ID:
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                uri = SupplierEntry.CONTENT_URI;
+                break;
+            case SUPPLIER_CARS:
+                // Found through the index on the supplier ID, the other cars aren't read
+                selection = appendSelection(selection, CarEntry.COLUMN_CAR_SUPPLIER_ID + "=?");
+                selectionArgs = appendSelectionArg(selectionArgs, uri.getPathSegments().get(1));
+                cursor = database.query(CarEntry.VIEW_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                uri = CarEntry.CHANGES_URI;
                 break;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI: " + uri);
@@ -110,10 +481,249 @@ public class CarProvider extends ContentProvider {
         // Set notification uri on the cursor,
         // so we know what the content URI the cursor was created for.
         // If the data of this uri changes, then we know we need to update the cursor.
+        // The cursors reloaded when any car changes watch CarEntry.CHANGES_URI, notified once
+        // per window of changes, rather than CarEntry.CONTENT_URI, whose single car URIs are
+        // notified once for every car that changed.
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
         return cursor;
     }
 
+    /**
+     * Read the summary row of the inventory totals. When the URI gives a threshold, the number
+     * of cars running low is counted as well.
+     */
+    private static Cursor queryStats(SQLiteDatabase database, Uri uri) {
+        String sql = "SELECT " + StatsEntry.COLUMN_CAR_COUNT + ", "
+                + StatsEntry.COLUMN_TOTAL_QUANTITY + ", "
+                + StatsEntry.COLUMN_TOTAL_VALUE;
+        String[] selectionArgs = null;
+        if (uri.getQueryParameter(CarContract.QUERY_PARAMETER_THRESHOLD) != null) {
+            sql += ", (SELECT COUNT(*) FROM " + CarEntry.TABLE_NAME + " WHERE "
+                    + CarEntry.COLUMN_CAR_QUANTITY + " < ?) AS " + StatsEntry.COLUMN_LOW_STOCK_COUNT;
+            selectionArgs = new String[]{String.valueOf(getThreshold(uri))};
+        }
+        sql += " FROM " + StatsEntry.TABLE_NAME + " WHERE " + StatsEntry._ID + " = " + StatsEntry.SUMMARY_ID;
+        return database.rawQuery(sql, selectionArgs);
+    }
+
+    /**
+     * Read the cars running low, with their supplier and the units sold since the time given
+     * by the URI, in a single query. The cars are found through the index on the quantity and
+     * their recent sales through the index on the time of sale. They are sorted by supplier,
+     * so the cars of each supplier follow each other.
+     */
+    private static Cursor queryReorder(SQLiteDatabase database, Uri uri) {
+        String since = uri.getQueryParameter(CarContract.QUERY_PARAMETER_SINCE);
+        String sql = "SELECT c." + CarEntry._ID + " AS " + ReorderEntry._ID
+                + ", c." + CarEntry.COLUMN_CAR_NAME + " AS " + ReorderEntry.COLUMN_CAR_NAME
+                + ", c." + CarEntry.COLUMN_CAR_QUANTITY + " AS " + ReorderEntry.COLUMN_CAR_QUANTITY
+                + ", c." + CarEntry.COLUMN_CAR_SUPPLIER_ID + " AS " + ReorderEntry.COLUMN_CAR_SUPPLIER_ID
+                + ", c." + CarEntry.COLUMN_CAR_SUPPLIER + " AS " + ReorderEntry.COLUMN_CAR_SUPPLIER
+                + ", c." + CarEntry.COLUMN_CAR_EMAIL + " AS " + ReorderEntry.COLUMN_CAR_EMAIL
+                + ", IFNULL(s.units, 0) AS " + ReorderEntry.COLUMN_RECENT_UNITS
+                + " FROM " + CarEntry.VIEW_NAME + " c LEFT JOIN (SELECT " + SalesEntry.COLUMN_CAR_ID
+                + ", SUM(" + SalesEntry.COLUMN_AMOUNT + ") AS units FROM " + SalesEntry.TABLE_NAME
+                + " WHERE " + SalesEntry.COLUMN_SOLD_AT + " >= ? GROUP BY " + SalesEntry.COLUMN_CAR_ID
+                + ") s ON s." + SalesEntry.COLUMN_CAR_ID + " = c." + CarEntry._ID
+                + " WHERE c." + CarEntry.COLUMN_CAR_QUANTITY + " < ?"
+                + " ORDER BY c." + CarEntry.COLUMN_CAR_SUPPLIER_ID + ", c." + CarEntry.COLUMN_CAR_NAME;
+        return database.rawQuery(sql, new String[]{
+                String.valueOf(since != null ? Long.parseLong(since) : 0),
+                String.valueOf(getThreshold(uri))});
+    }
+
+    /**
+     * Return the table of sales totals for the given URI matcher code.
+     */
+    private static String getRollupTable(int match) {
+        switch (match) {
+            case SALES_BY_CAR:
+                return SalesEntry.TABLE_BY_CAR;
+            case SALES_BY_DAY:
+                return SalesEntry.TABLE_BY_DAY;
+            default:
+                return SalesEntry.TABLE_BY_SUPPLIER;
+        }
+    }
+
+    /**
+     * Return the low stock threshold given by the URI.
+     */
+    private static int getThreshold(Uri uri) {
+        String threshold = uri.getQueryParameter(CarContract.QUERY_PARAMETER_THRESHOLD);
+        if (threshold == null) {
+            throw new IllegalArgumentException("Low stock requires a threshold: " + uri);
+        }
+        return Integer.parseInt(threshold);
+    }
+
+    /**
+     * Return true if a query for the given columns can be answered by the read model. Inside a
+     * batch the model doesn't have the changes of the batch yet, so it can't be used.
+     */
+    private boolean canUseReadModel(String[] projection) {
+        return mBatchChanges.get() == null && CarReadModel.canServe(projection);
+    }
+
+    /**
+     * Search the cars through the full-text index. Every word of the text must be the start of
+     * a word of the name or supplier of the car. The cars are ranked by relevance, see
+     * {@link #scoreMatch(byte[])}, and the ones with the same score are sorted by name.
+     */
+    private Cursor searchCars(SQLiteDatabase database, Uri uri, String[] projection) {
+        String query = uri.getQueryParameter(CarContract.QUERY_PARAMETER_QUERY);
+        String limit = uri.getQueryParameter(CarContract.QUERY_PARAMETER_LIMIT);
+        int maxRows = limit != null ? Integer.parseInt(limit) : DEFAULT_SEARCH_LIMIT;
+
+        // Turn the text into a prefix query, e.g. "ford mus" into "ford* mus*". Only letters
+        // and digits are kept, so the user can't type in the FTS query syntax by mistake.
+        StringBuilder match = new StringBuilder();
+        if (query != null) {
+            for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                match.append(word).append("* ");
+            }
+        }
+
+        // The columns are read from the view, aliased c
+        StringBuilder columns = new StringBuilder();
+        if (projection == null) {
+            columns.append("c.*");
+        } else {
+            for (String column : projection) {
+                if (columns.length() > 0) {
+                    columns.append(", ");
+                }
+                columns.append("c.").append(column).append(" AS ").append(column);
+            }
+        }
+
+        // Score every match. Only the ID, the name and the match statistics of the matching
+        // cars are read here, the rows themselves are only read for the best ones.
+        List<SearchHit> hits = new ArrayList<>();
+        if (match.length() != 0) {
+            String fts = CarEntry.FTS_TABLE_NAME;
+            Cursor matches = database.rawQuery("SELECT docid, " + CarEntry.COLUMN_CAR_NAME
+                            + ", matchinfo(" + fts + ", 'pcx') FROM " + fts + " WHERE " + fts + " MATCH ?",
+                    new String[]{match.toString().trim()});
+            try {
+                while (matches.moveToNext()) {
+                    hits.add(new SearchHit(matches.getLong(0), matches.getString(1),
+                            scoreMatch(matches.getBlob(2))));
+                }
+            } finally {
+                matches.close();
+            }
+        }
+        if (hits.isEmpty()) {
+            // Nothing to search for, or nothing found
+            return database.rawQuery("SELECT " + columns + " FROM " + CarEntry.VIEW_NAME
+                    + " c WHERE 0", null);
+        }
+        Collections.sort(hits);
+
+        // Read the best cars, in the order of their rank. The IDs are numbers, so they are
+        // written into the query as they are.
+        StringBuilder ids = new StringBuilder();
+        StringBuilder rank = new StringBuilder();
+        for (int i = 0; i < hits.size() && i < maxRows; i++) {
+            long id = hits.get(i).id;
+            if (i > 0) {
+                ids.append(", ");
+            }
+            ids.append(id);
+            rank.append(" WHEN ").append(id).append(" THEN ").append(i);
+        }
+        String sql = "SELECT " + columns + " FROM " + CarEntry.VIEW_NAME + " c"
+                + " WHERE c." + CarEntry._ID + " IN (" + ids + ")"
+                + " ORDER BY CASE c." + CarEntry._ID + rank + " END";
+        return database.rawQuery(sql, null);
+    }
+
+    /**
+     * Score the relevance of a car from the matchinfo(..., 'pcx') statistics of its match. For
+     * every word of the query and every column of the index, the hits of the word in the car
+     * count for more when the word is rare in that column over all the cars, and count
+     * {@link #SEARCH_COLUMN_WEIGHTS} times, so a match on the name beats one on the supplier.
+     */
+    private static double scoreMatch(byte[] matchInfo) {
+        // An array of 32 bits integers, in the byte order of the device
+        IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columnCount = info.get(1);
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columnCount && column < SEARCH_COLUMN_WEIGHTS.length; column++) {
+                // Hits in this car, then in all the cars, then number of cars with a hit
+                int index = 2 + 3 * (phrase * columnCount + column);
+                int hitsInCar = info.get(index);
+                if (hitsInCar > 0) {
+                    score += SEARCH_COLUMN_WEIGHTS[column] * hitsInCar / info.get(index + 1);
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * A car matching a search, sorted by decreasing score, then by name.
+     */
+    private static final class SearchHit implements Comparable<SearchHit> {
+        final long id;
+        final String name;
+        final double score;
+
+        SearchHit(long id, String name, double score) {
+            this.id = id;
+            this.name = name == null ? "" : name;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(SearchHit other) {
+            int byScore = Double.compare(other.score, score);
+            if (byScore != 0) {
+                return byScore;
+            }
+            int byName = name.compareToIgnoreCase(other.name);
+            return byName != 0 ? byName : Long.compare(id, other.id);
+        }
+    }
+
+    /**
+     * Combine the given selection with an extra condition, both of which must be true.
+     */
+    private static String appendSelection(String selection, String condition) {
+        if (selection == null || selection.isEmpty()) {
+            return condition;
+        }
+        return "(" + selection + ") AND " + condition;
+    }
+
+    /**
+     * Add an argument at the end of the given selection arguments.
+     */
+    private static String[] appendSelectionArg(String[] selectionArgs, String arg) {
+        if (selectionArgs == null) {
+            return new String[]{arg};
+        }
+        String[] args = new String[selectionArgs.length + 1];
+        System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+        args[selectionArgs.length] = arg;
+        return args;
+    }
+
+    /**
+     * Close the database. Only the tests shut a provider down, the one of the app lives as long
+     * as its process.
+     */
+    @Override
+    public void shutdown() {
+        mDbHelper.close();
+    }
+
     /**
      * Returns the MIME type of data for the content URI.
      */
@@ -122,9 +732,27 @@ public class CarProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case CARS:
+            case CAR_SEARCH:
                 return CarEntry.CONTENT_LIST_TYPE;
             case CAR_ID:
+            case CAR_SELL:
                 return CarEntry.CONTENT_ITEM_TYPE;
+            case CAR_STATS:
+            case CAR_LOW_STOCK:
+                return StatsEntry.CONTENT_ITEM_TYPE;
+            case CAR_REORDER:
+                return ReorderEntry.CONTENT_LIST_TYPE;
+            case SALES:
+            case SALES_BY_CAR:
+            case SALES_BY_DAY:
+            case SALES_BY_SUPPLIER:
+                return SalesEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIER_CARS:
+                return CarEntry.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
@@ -139,6 +767,8 @@ public class CarProvider extends ContentProvider {
         switch (match) {
             case CARS:
                 return insertCar(uri, values);
+            case SUPPLIERS:
+                return insertSupplier(values);
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
@@ -149,58 +779,271 @@ public class CarProvider extends ContentProvider {
      * for that specific row in the database.
      */
     public Uri insertCar (Uri uri, ContentValues values){
-        // Check if the given name is null
-        String name = values.getAsString(CarEntry.COLUMN_CAR_NAME);
-        if (name == null) {
-            throw new IllegalArgumentException("Car requires a name");
+        CarValidator.validate(values);
+
+        // The supplier and the car are written together, or not at all
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        CarChanges changes = new CarChanges();
+        long id = -1;
+        database.beginTransactionNonExclusive();
+        try {
+            ContentValues carValues = toCarValues(values, changes, null);
+
+            // Insert through the cached statement, there is no SQL to build and compile
+            SQLiteStatement statement = mDbHelper.acquireStatement(SQL_INSERT_CAR);
+            try {
+                bindCar(statement, carValues);
+                id = statement.executeInsert();
+            } catch (SQLException e) {
+                id = -1;
+            } finally {
+                mDbHelper.releaseStatement(statement);
+            }
+            if (id != -1) {
+                database.setTransactionSuccessful();
+            }
+        } finally {
+            database.endTransaction();
+        }
+
+        // Show a log message when the insertion was failed
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        // Notify all listeners that a car was inserted
+        changes.inserted(id);
+        notifyChange(changes);
+
+        // return the new URI with the ID (of the newly inserted row) appended at the end
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Insert all the given cars at once. Every row is validated first, then all of them are
+     * written in a single transaction through one precompiled statement, and listeners are
+     * notified once at the end. If any row is invalid nothing is inserted.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        final int match = sUriMatcher.match(uri);
+        if (match != CARS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+
+        for (ContentValues carValues : values) {
+            CarValidator.validate(carValues);
+        }
+
+        // Track the number of rows that were inserted
+        int rowsInserted = 0;
+        CarChanges changes = new CarChanges();
+        // The rows of a batch mostly share a few suppliers, so each one is only looked up once
+        Map<String, Long> supplierIds = new HashMap<>();
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = mDbHelper.acquireStatement(SQL_INSERT_CAR);
+        // Let the list be read while the cars are written
+        database.beginTransactionNonExclusive();
+        try {
+            for (ContentValues carValues : values) {
+                bindCar(statement, toCarValues(carValues, changes, supplierIds));
+                long id = statement.executeInsert();
+                if (id != -1) {
+                    changes.inserted(id);
+                    rowsInserted++;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mDbHelper.releaseStatement(statement);
         }
 
-        // Check if the given price is bigger than 0
-        Integer price = values.getAsInteger(CarEntry.COLUMN_CAR_PRICE);
-        if (price == null && price < 0) {
-            throw new IllegalArgumentException("Car requires a valid price");
+        // Notify all listeners once for the whole batch, right away since it is committed
+        if (rowsInserted != 0) {
+            notifyChange(changes);
+            mNotifications.flush();
         }
+        if (rowsInserted >= CHECKPOINT_ROWS) {
+            mDbHelper.checkpoint();
+        }
+        return rowsInserted;
+    }
 
-        // Check if the given quantity is bigger than 0
-        Integer quantity = values.getAsInteger(CarEntry.COLUMN_CAR_QUANTITY);
-        if (quantity == null && quantity < 0) {
-            throw new IllegalArgumentException("Car requires a valid quantity");
+    /**
+     * Apply all the operations in a single transaction. Listeners are notified once, after the
+     * transaction is committed, instead of once per operation.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        CarChanges changes = new CarChanges();
+        mBatchChanges.set(changes);
+        database.beginTransactionNonExclusive();
+        boolean successful = false;
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            database.endTransaction();
+            mBatchChanges.remove();
+            if (successful && !changes.isEmpty()) {
+                // All the changes of the batch are notified together
+                notifyChange(changes);
+                // The transaction is over, don't wait for the end of the window
+                mNotifications.flush();
+            }
+            if (successful && operations.size() >= CHECKPOINT_ROWS) {
+                mDbHelper.checkpoint();
+            }
         }
+    }
 
-        // Check if the given supplier is null
+    /**
+     * Return the values to write to the cars table: the supplier name and email are replaced by
+     * the ID of the supplier with this name, which is created if there is none yet. The given
+     * map, if any, remembers the suppliers already resolved.
+     */
+    private ContentValues toCarValues(ContentValues values, CarChanges changes, Map<String, Long> supplierIds) {
         String supplier = values.getAsString(CarEntry.COLUMN_CAR_SUPPLIER);
         if (supplier == null) {
-            throw new IllegalArgumentException("Car requires a supplier");
+            return values;
         }
-
-        // Check if the given email is null
+        supplier = supplier.trim();
         String email = values.getAsString(CarEntry.COLUMN_CAR_EMAIL);
-        if (email == null) {
-            throw new IllegalArgumentException("Car requires an email");
-        }
 
-        // Check if the given image is null
-        String image = values.getAsString(CarEntry.COLUMN_CAR_IMAGE);
-        if (image == null) {
-            throw new IllegalArgumentException("Car requires an image");
+        String key = supplier.toLowerCase(Locale.ROOT) + '\n' + email;
+        Long supplierId = supplierIds != null ? supplierIds.get(key) : null;
+        if (supplierId == null) {
+            supplierId = findOrCreateSupplier(supplier, email, changes);
+            if (supplierIds != null) {
+                supplierIds.put(key, supplierId);
+            }
         }
 
-        // Get writable DataBase
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
-        long id = database.insert(CarEntry.TABLE_NAME, null, values);
+        ContentValues carValues = new ContentValues(values);
+        carValues.remove(CarEntry.COLUMN_CAR_SUPPLIER);
+        carValues.remove(CarEntry.COLUMN_CAR_EMAIL);
+        carValues.put(CarEntry.COLUMN_CAR_SUPPLIER_ID, supplierId);
+        return carValues;
+    }
+
+    /**
+     * Return the ID of the supplier with the given name, ignoring case, creating it if there is
+     * none. The email of an existing supplier is replaced by the given one, if any, which
+     * changes the email of all of its cars.
+     */
+    private long findOrCreateSupplier(String name, String email, CarChanges changes) {
+        long id;
+        SQLiteStatement statement = mDbHelper.acquireStatement(SQL_FIND_SUPPLIER);
+        try {
+            statement.bindString(1, name);
+            id = statement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            // No supplier with this name yet
+            id = -1;
+        } finally {
+            mDbHelper.releaseStatement(statement);
+        }
 
-        // Show a log message when the insertion was failed
         if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
+            if (email == null) {
+                throw new IllegalArgumentException("Supplier requires an email");
+            }
+            statement = mDbHelper.acquireStatement(SQL_INSERT_SUPPLIER);
+            try {
+                statement.bindString(1, name);
+                statement.bindString(2, email);
+                id = statement.executeInsert();
+            } finally {
+                mDbHelper.releaseStatement(statement);
+            }
+            changes.suppliers();
+            return id;
         }
 
-        // Notify all listeners that the data has changed for the car content uri
-        // uri: content://com.edmilson.inventoryapp/cars
-        getContext().getContentResolver().notifyChange(uri, null);
+        if (email != null) {
+            statement = mDbHelper.acquireStatement(SQL_UPDATE_SUPPLIER_EMAIL);
+            try {
+                statement.bindString(1, email);
+                statement.bindLong(2, id);
+                if (statement.executeUpdateDelete() != 0) {
+                    // Every car of the supplier has the new email
+                    changes.suppliers();
+                    changes.all();
+                }
+            } finally {
+                mDbHelper.releaseStatement(statement);
+            }
+        }
+        return id;
+    }
 
-        // return the new URI with the ID (of the newly inserted row) appended at the end
-        return ContentUris.withAppendedId(uri, id);
+    /**
+     * Insert a supplier with the given name and email, or give the existing supplier with this
+     * name the new email. Return the content URI of the supplier.
+     */
+    private Uri insertSupplier(ContentValues values) {
+        String name = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
+        if (name == null) {
+            throw new IllegalArgumentException("Supplier requires a name");
+        }
+        String email = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_EMAIL);
+        if (email == null) {
+            throw new IllegalArgumentException("Supplier requires an email");
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        CarChanges changes = new CarChanges();
+        long id;
+        database.beginTransactionNonExclusive();
+        try {
+            id = findOrCreateSupplier(name.trim(), email, changes);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        notifyChange(changes);
+        return ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, id);
+    }
+
+    /**
+     * Bind the values of a car to the insert statement, following {@link #INSERT_COLUMNS}.
+     */
+    private static void bindCar(SQLiteStatement statement, ContentValues values) {
+        statement.clearBindings();
+        for (int i = 0; i < INSERT_COLUMNS.length; i++) {
+            Object value = values.get(INSERT_COLUMNS[i]);
+            if (value == null) {
+                statement.bindNull(i + 1);
+            } else if (value instanceof Number) {
+                statement.bindLong(i + 1, ((Number) value).longValue());
+            } else {
+                statement.bindString(i + 1, value.toString());
+            }
+        }
+    }
+
+    /**
+     * Build the SQL statement inserting one car, with one placeholder per {@link #INSERT_COLUMNS}.
+     */
+    private static String buildInsertSql() {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < INSERT_COLUMNS.length; i++) {
+            if (i > 0) {
+                columns.append(", ");
+                placeholders.append(", ");
+            }
+            columns.append(INSERT_COLUMNS[i]);
+            placeholders.append('?');
+        }
+        return "INSERT INTO " + CarEntry.TABLE_NAME + " (" + columns + ") VALUES (" + placeholders + ")";
     }
 
     /**
@@ -211,35 +1054,80 @@ public class CarProvider extends ContentProvider {
         // Get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Track the number of rows that were deleted
+        // Track the number of rows that were deleted, and which ones
         int rowsDeleted;
+        CarChanges changes = new CarChanges();
 
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case CARS:
-                // Delete all rows that match the selection and selection args
-                rowsDeleted = database.delete(CarEntry.TABLE_NAME, selection, selectionArgs);
+                // Delete all rows that match the selection and selection args. The deleted cars
+                // are found in the same transaction, so no other write can change them in between.
+                database.beginTransactionNonExclusive();
+                try {
+                    invalidateCachedImages(database, selection, selectionArgs);
+                    findChangedCars(database, selection, selectionArgs, changes, true);
+                    rowsDeleted = database.delete(CarEntry.TABLE_NAME, toTableSelection(selection), selectionArgs);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
                 break;
             case CAR_ID:
                 // Delete a single row given by the ID in the URI
+                long id = ContentUris.parseId(uri);
                 selection = CarEntry._ID + "=?";
-                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                rowsDeleted = database.delete(CarEntry.TABLE_NAME, selection, selectionArgs);
+                selectionArgs = new String[] { String.valueOf(id) };
+                invalidateCachedImages(database, selection, selectionArgs);
+                changes.deleted(id);
+                rowsDeleted = deleteCar(id);
+                break;
+            case SALES:
+                // Compact the ledger. The totals were computed as the sales were appended,
+                // they don't change, so there is nothing to notify.
+                String before = uri.getQueryParameter(CarContract.QUERY_PARAMETER_BEFORE);
+                if (before == null) {
+                    throw new IllegalArgumentException("Compacting the sales requires a time: " + uri);
+                }
+                return database.delete(SalesEntry.TABLE_NAME, SalesEntry.COLUMN_SOLD_AT + " < ?",
+                        new String[]{String.valueOf(Long.parseLong(before))});
+            case SUPPLIER_ID:
+                // A supplier can only be deleted once it has no cars left
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                if (DatabaseUtils.queryNumEntries(database, CarEntry.TABLE_NAME,
+                        CarEntry.COLUMN_CAR_SUPPLIER_ID + "=?", selectionArgs) != 0) {
+                    throw new IllegalArgumentException("Supplier still has cars: " + uri);
+                }
+                rowsDeleted = database.delete(SupplierEntry.TABLE_NAME, selection, selectionArgs);
+                changes.suppliers();
                 break;
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
 
-        // If 1 or more rows were deleted, then notify all listeners that the data at the
-        // given URI has changed
+        // If 1 or more rows were deleted, then notify all listeners of these cars
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(changes);
         }
 
         // Return the number of rows deleted
         return rowsDeleted;
     }
 
+    /**
+     * Delete the car with the given ID through the cached statement.
+     */
+    private int deleteCar(long id) {
+        SQLiteStatement statement = mDbHelper.acquireStatement(SQL_DELETE_CAR);
+        try {
+            statement.bindLong(1, id);
+            return statement.executeUpdateDelete();
+        } finally {
+            mDbHelper.releaseStatement(statement);
+        }
+    }
+
     /**
      * Updates the data at the given selection and selection arguments, with the new ContentValues.
      */
@@ -253,20 +1141,144 @@ public class CarProvider extends ContentProvider {
                 // For the CAR_ID code, extract out the ID from the URI,
                 // so we know which row to update. Selection will be "_id=?" and selection
                 // arguments will be a String array containing the actual ID.
-                selection = CarEntry._ID + "=?";
-                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                return updateCar(uri, values, selection, selectionArgs);
+                long id = ContentUris.parseId(uri);
+                String version = uri.getQueryParameter(CarContract.QUERY_PARAMETER_VERSION);
+                if (version == null) {
+                    if (values.size() == 1 && values.getAsInteger(CarEntry.COLUMN_CAR_QUANTITY) != null) {
+                        // Only the stock changes, which has its own cached statement
+                        return updateQuantity(uri, values.getAsInteger(CarEntry.COLUMN_CAR_QUANTITY));
+                    }
+                    selection = CarEntry._ID + "=?";
+                    selectionArgs = new String[] { String.valueOf(id) };
+                    return updateCar(uri, values, selection, selectionArgs);
+                }
+
+                // The car is only updated if it still has the version the values are based on.
+                // The version is checked by the update itself, so nothing is read beforehand.
+                long expectedVersion = Long.parseLong(version);
+                selection = CarEntry._ID + "=? AND " + CarEntry.COLUMN_CAR_VERSION + "=?";
+                selectionArgs = new String[] { String.valueOf(id), String.valueOf(expectedVersion) };
+                return updateCar(uri, values, selection, selectionArgs, id, expectedVersion);
+            case CAR_SELL:
+                return sellCar(uri, values);
+            case SUPPLIER_ID:
+                return updateSupplier(uri, values);
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
     }
 
+    /**
+     * Set the quantity of the car given by the URI through the cached statement.
+     */
+    private int updateQuantity(Uri uri, int quantity) {
+        // Check if the quantity is bigger or equals to 0
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Car requires valid quantity");
+        }
+
+        int rowsUpdated;
+        SQLiteStatement statement = mDbHelper.acquireStatement(SQL_UPDATE_QUANTITY);
+        try {
+            statement.bindLong(1, quantity);
+            statement.bindLong(2, ContentUris.parseId(uri));
+            rowsUpdated = statement.executeUpdateDelete();
+        } finally {
+            mDbHelper.releaseStatement(statement);
+        }
+
+        if (rowsUpdated != 0) {
+            CarChanges changes = new CarChanges();
+            changes.updated(ContentUris.parseId(uri));
+            notifyChange(changes);
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Sell units of the car given by the URI, without reading it first: the quantity is only
+     * decremented if there is enough stock left. Return 1 if the car was sold, or 0 if it is
+     * out of stock (or doesn't exist). Each sale is appended to the sales ledger.
+     */
+    private int sellCar(Uri uri, ContentValues values) {
+        // From an URI such as "content://com.edmilson.inventoryapp/cars/3/sell" the ID is 3
+        long id = Long.parseLong(uri.getPathSegments().get(1));
+
+        // The amount is optional, a single unit is sold by default
+        Integer amount = values == null ? null : values.getAsInteger(CarEntry.SELL_AMOUNT);
+        if (amount == null) {
+            amount = 1;
+        }
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Car requires a valid amount to sell");
+        }
+
+        // The stock is decremented and the sale appended to the ledger in the same transaction
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsSold;
+        database.beginTransactionNonExclusive();
+        try {
+            SQLiteStatement statement = mDbHelper.acquireStatement(SQL_SELL_CAR);
+            try {
+                statement.bindLong(1, amount);
+                statement.bindLong(2, id);
+                statement.bindLong(3, amount);
+                rowsSold = statement.executeUpdateDelete();
+            } finally {
+                mDbHelper.releaseStatement(statement);
+            }
+            if (rowsSold != 0) {
+                recordSale(id, amount, System.currentTimeMillis());
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // If the car was sold, notify all listeners that its data has changed
+        if (rowsSold != 0) {
+            CarChanges changes = new CarChanges();
+            changes.updated(id);
+            notifyChange(changes);
+        }
+        return rowsSold;
+    }
+
+    /**
+     * Append a sale of the car with the given ID to the ledger. The totals are updated by the
+     * database as the sale is inserted.
+     */
+    private void recordSale(long id, int amount, long soldAt) {
+        // Days are counted in the local time zone, so the sales of a day match the calendar
+        long day = (soldAt + TimeZone.getDefault().getOffset(soldAt)) / DateUtils.DAY_IN_MILLIS;
+        SQLiteStatement statement = mDbHelper.acquireStatement(SQL_RECORD_SALE);
+        try {
+            statement.bindLong(1, amount);
+            statement.bindLong(2, soldAt);
+            statement.bindLong(3, day);
+            statement.bindLong(4, id);
+            statement.executeInsert();
+        } finally {
+            mDbHelper.releaseStatement(statement);
+        }
+    }
+
     /**
      * Update cars in the database with the given content values. Apply the changes to the rows
      * specified in the selection and selection arguments (which could be 0 or 1 or more cars).
      * Return the number of rows that were successfully updated.
      */
     private int updateCar(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return updateCar(uri, values, selection, selectionArgs, -1, 0);
+    }
+
+    /**
+     * Update cars like {@link #updateCar(Uri, ContentValues, String, String[])}. If conflictId
+     * isn't -1 and no car matches the selection while the car with that ID still exists, it was
+     * changed by someone else: a {@link CarConflictException} is thrown for the expected version.
+     */
+    private int updateCar(Uri uri, ContentValues values, String selection, String[] selectionArgs,
+                          long conflictId, long expectedVersion) {
         // If the {@link CarEntry#COLUMN_CAR_NAME} key is present,
         // check that the name value is not null.
         if (values.containsKey(CarEntry.COLUMN_CAR_NAME)) {
@@ -323,6 +1335,11 @@ public class CarProvider extends ContentProvider {
             }
         }
 
+        // The version is moved forward by the provider only
+        if (values.containsKey(CarEntry.COLUMN_CAR_VERSION)) {
+            throw new IllegalArgumentException("The version of a car can't be written");
+        }
+
         // If there are no values to update, then don't try to update the database
         if (values.size() == 0) {
             return 0;
@@ -331,16 +1348,235 @@ public class CarProvider extends ContentProvider {
         // Otherwise, get writable database to update the data
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(CarEntry.TABLE_NAME, values, selection, selectionArgs);
+        CarChanges changes = new CarChanges();
+        int rowsUpdated;
+        database.beginTransactionNonExclusive();
+        try {
+            // Find out which cars are about to change, so only their listeners are notified.
+            // It is done in the transaction, so no other write can change the cars in between.
+            // If no car matches, e.g. its version changed, nothing is written, not even a new
+            // supplier. The transaction is still successful, as it may be part of a batch.
+            if (findChangedCars(database, selection, selectionArgs, changes, false) == 0) {
+                // Whether the car is still there is read in the same transaction, so a delete
+                // or an insert in between can't turn a conflict into a missing car or back
+                boolean conflict = conflictId != -1 && DatabaseUtils.queryNumEntries(database,
+                        CarEntry.TABLE_NAME, CarEntry._ID + "=?", new String[] { String.valueOf(conflictId) }) != 0;
+                database.setTransactionSuccessful();
+                if (conflict) {
+                    throw new CarConflictException(conflictId, expectedVersion);
+                }
+                return 0;
+            }
+
+            // If the picture of the cars is being replaced, the cached copies of the old one are stale
+            if (values.containsKey(CarEntry.COLUMN_CAR_IMAGE)
+                    || values.containsKey(CarEntry.COLUMN_CAR_THUMBNAIL)
+                    || values.containsKey(CarEntry.COLUMN_CAR_EDITOR_IMAGE)) {
+                invalidateCachedImages(database, selection, selectionArgs);
+            }
+
+            ContentValues carValues = values;
+            if (values.containsKey(CarEntry.COLUMN_CAR_EMAIL) && !values.containsKey(CarEntry.COLUMN_CAR_SUPPLIER)) {
+                // The email belongs to the supplier, so it is changed for all of its cars
+                updateSupplierEmails(database, values.getAsString(CarEntry.COLUMN_CAR_EMAIL),
+                        selection, selectionArgs, changes);
+                carValues = new ContentValues(values);
+                carValues.remove(CarEntry.COLUMN_CAR_EMAIL);
+            }
+            carValues = toCarValues(carValues, changes, null);
 
-        // If 1 or more rows were updated, then notify all listeners that the data at the
-        // given URI has changed
+            // Perform the update on the database and get the number of rows affected
+            if (carValues.size() != 0) {
+                rowsUpdated = updateCarsTable(database, carValues, toTableSelection(selection), selectionArgs);
+            } else {
+                rowsUpdated = (int) DatabaseUtils.queryNumEntries(database, CarEntry.VIEW_NAME,
+                        selection, selectionArgs);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // If 1 or more rows were updated, then notify all listeners of these cars
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(changes);
         }
 
         // Return the number of rows updated
         return rowsUpdated;
     }
+
+    /**
+     * Update the cars table like {@link SQLiteDatabase#update}, also moving the version of every
+     * updated car forward. Return the number of cars updated.
+     */
+    private static int updateCarsTable(SQLiteDatabase database, ContentValues values, String whereClause,
+                                       String[] whereArgs) {
+        StringBuilder sql = new StringBuilder(128);
+        sql.append("UPDATE ").append(CarEntry.TABLE_NAME).append(" SET ");
+        Object[] bindArgs = new Object[values.size() + (whereArgs == null ? 0 : whereArgs.length)];
+        int i = 0;
+        for (String column : values.keySet()) {
+            sql.append(column).append("=?, ");
+            bindArgs[i++] = values.get(column);
+        }
+        sql.append(CarEntry.COLUMN_CAR_VERSION).append('=').append(CarEntry.COLUMN_CAR_VERSION).append("+1");
+        if (!TextUtils.isEmpty(whereClause)) {
+            sql.append(" WHERE ").append(whereClause);
+        }
+        if (whereArgs != null) {
+            for (String whereArg : whereArgs) {
+                bindArgs[i++] = whereArg;
+            }
+        }
+
+        SQLiteStatement statement = database.compileStatement(sql.toString());
+        try {
+            for (i = 0; i < bindArgs.length; i++) {
+                DatabaseUtils.bindObjectToProgram(statement, i + 1, bindArgs[i]);
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Give the suppliers of the cars matching the given selection a new email.
+     */
+    private static void updateSupplierEmails(SQLiteDatabase database, String email, String selection,
+                                             String[] selectionArgs, CarChanges changes) {
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, email);
+        String suppliers = SupplierEntry._ID + " IN (SELECT " + CarEntry.COLUMN_CAR_SUPPLIER_ID
+                + " FROM " + CarEntry.VIEW_NAME
+                + (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection) + ")";
+        if (database.update(SupplierEntry.TABLE_NAME, values, suppliers, selectionArgs) != 0) {
+            // The other cars of these suppliers have the new email too
+            changes.suppliers();
+            changes.all();
+        }
+    }
+
+    /**
+     * Update the name or email of the supplier given by the URI. All of its cars change with it.
+     */
+    private int updateSupplier(Uri uri, ContentValues values) {
+        if (values.containsKey(SupplierEntry.COLUMN_SUPPLIER_NAME)) {
+            String name = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
+            if (name == null) {
+                throw new IllegalArgumentException("Supplier requires a name");
+            }
+            values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name.trim());
+        }
+        if (values.containsKey(SupplierEntry.COLUMN_SUPPLIER_EMAIL)
+                && values.getAsString(SupplierEntry.COLUMN_SUPPLIER_EMAIL) == null) {
+            throw new IllegalArgumentException("Supplier requires an email");
+        }
+        if (values.size() == 0) {
+            return 0;
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        String[] selectionArgs = {String.valueOf(ContentUris.parseId(uri))};
+        CarChanges changes = new CarChanges();
+        int rowsUpdated;
+        database.beginTransactionNonExclusive();
+        try {
+            // The cars of the supplier are found in the same transaction as the update
+            findChangedCars(database, CarEntry.COLUMN_CAR_SUPPLIER_ID + "=?", selectionArgs, changes, false);
+            rowsUpdated = database.update(SupplierEntry.TABLE_NAME, values, SupplierEntry._ID + "=?",
+                    selectionArgs);
+            database.setTransactionSuccessful();
+        } catch (SQLiteConstraintException e) {
+            throw new IllegalArgumentException("Supplier already exists: "
+                    + values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME), e);
+        } finally {
+            database.endTransaction();
+        }
+
+        if (rowsUpdated != 0) {
+            changes.suppliers();
+            notifyChange(changes);
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Turn a selection on the columns of the cars URIs, which include the name and email of the
+     * supplier, into a selection on the cars table.
+     */
+    private static String toTableSelection(String selection) {
+        if (TextUtils.isEmpty(selection)) {
+            return selection;
+        }
+        return CarEntry._ID + " IN (SELECT " + CarEntry._ID + " FROM " + CarEntry.VIEW_NAME
+                + " WHERE " + selection + ")";
+    }
+
+    /**
+     * Drop the cached pictures of the cars matching the given selection, before they are
+     * deleted or get a new picture.
+     */
+    private void invalidateCachedImages(SQLiteDatabase database, String selection, String[] selectionArgs) {
+        ImageCache imageCache = ImageCache.getInstance(getContext());
+        String[] projection = {
+                CarEntry.COLUMN_CAR_IMAGE,
+                CarEntry.COLUMN_CAR_THUMBNAIL,
+                CarEntry.COLUMN_CAR_EDITOR_IMAGE};
+        Cursor cursor = database.query(CarEntry.VIEW_NAME, projection,
+                selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < projection.length; i++) {
+                    imageCache.invalidate(cursor.getString(i));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Record the IDs of the cars matching the given selection as updated or deleted, before
+     * the change is made, in the transaction making it. When there are too many of them,
+     * anything is recorded as changed.
+     *
+     * @return the number of cars found, which stops at one more than {@link CarChanges#MAX_IDS}
+     */
+    private static int findChangedCars(SQLiteDatabase database, String selection, String[] selectionArgs,
+                                       CarChanges changes, boolean deleted) {
+        // One more than the maximum is enough to find out there are too many
+        Cursor cursor = database.query(CarEntry.VIEW_NAME, new String[]{CarEntry._ID},
+                selection, selectionArgs, null, null, null, String.valueOf(CarChanges.MAX_IDS + 1));
+        try {
+            while (cursor.moveToNext()) {
+                if (deleted) {
+                    changes.deleted(cursor.getLong(0));
+                } else {
+                    changes.updated(cursor.getLong(0));
+                }
+            }
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Notify all listeners of the cars that changed. While a batch is running on this thread
+     * the notification is held back until the batch is committed. Otherwise it is sent at the
+     * end of the notification window, together with the other changes.
+     */
+    private void notifyChange(CarChanges changes) {
+        CarChanges batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.addAll(changes);
+        } else {
+            // The changes are committed, bring the read model up to date before the listeners
+            // query it again
+            mReadModel.apply(mDbHelper.getWritableDatabase(), changes);
+            mNotifications.schedule(changes);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+package com.edmilson.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.v4.util.LongSparseArray;
+import android.text.TextUtils;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory copy of the cars and their supplier, by ID, used by {@link CarProvider} to answer the queries
+ * of the list and the editor without going to the database.
+ * <p>
+ * It is read from the database on first use. Afterwards the provider hands it the
+ * {@link CarChanges} of every committed write, and only the cars that changed are read again.
+ */
+final class CarReadModel {
+
+    /** Columns of the table held by the model, the queries of other columns go to the database */
+    private static final String[] COLUMNS = {
+            CarEntry._ID,
+            CarEntry.COLUMN_CAR_NAME,
+            CarEntry.COLUMN_CAR_PRICE,
+            CarEntry.COLUMN_CAR_QUANTITY,
+            CarEntry.COLUMN_CAR_SUPPLIER_ID,
+            CarEntry.COLUMN_CAR_SUPPLIER,
+            CarEntry.COLUMN_CAR_EMAIL,
+            CarEntry.COLUMN_CAR_IMAGE,
+            CarEntry.COLUMN_CAR_THUMBNAIL,
+            CarEntry.COLUMN_CAR_EDITOR_IMAGE,
+            CarEntry.COLUMN_CAR_VERSION};
+
+    /** The cars, by ID. Its keys are sorted, which gives the pages of the list for free. */
+    private final LongSparseArray<Car> mCars = new LongSparseArray<>();
+
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+
+    /** False until the cars have been read, or after they have been invalidated */
+    private volatile boolean mLoaded;
+
+    /**
+     * Return true if the model holds all the given columns.
+     */
+    static boolean canServe(String[] projection) {
+        if (projection == null) {
+            // All the columns of the table, including the ones the model doesn't know
+            return false;
+        }
+        for (String column : projection) {
+            if (indexOfColumn(column) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the cars sorted by ID, starting after the given ID, at most limit of them (or all
+     * of them if limit is negative).
+     */
+    Cursor queryPage(SQLiteDatabase db, String[] projection, long afterId, int limit) {
+        int[] columns = resolve(projection);
+        ensureLoaded(db);
+        mLock.readLock().lock();
+        try {
+            int start = firstIndexAfter(afterId);
+            int end = limit < 0 ? mCars.size() : Math.min(mCars.size(), start + limit);
+            MatrixCursor cursor = new MatrixCursor(projection, Math.max(end - start, 0));
+            for (int i = start; i < end; i++) {
+                addRow(cursor, columns, mCars.valueAt(i));
+            }
+            return cursor;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the car with the given ID, or an empty cursor if there is none.
+     */
+    Cursor queryById(SQLiteDatabase db, String[] projection, long id) {
+        int[] columns = resolve(projection);
+        ensureLoaded(db);
+        mLock.readLock().lock();
+        try {
+            MatrixCursor cursor = new MatrixCursor(projection, 1);
+            Car car = mCars.get(id);
+            if (car != null) {
+                addRow(cursor, columns, car);
+            }
+            return cursor;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bring the model up to date with committed changes. The cars that changed are read again
+     * while the model is locked, so a later write can't be overwritten by an earlier one.
+     */
+    void apply(SQLiteDatabase db, CarChanges changes) {
+        if (!changes.hasCars()) {
+            return;
+        }
+        if (changes.isAll()) {
+            invalidate();
+            return;
+        }
+        mLock.writeLock().lock();
+        try {
+            if (!mLoaded) {
+                // Nothing to keep up to date, the cars will be read on first use
+                return;
+            }
+            for (long id : changes.getIds()) {
+                mCars.remove(id);
+            }
+            readCars(db, CarEntry._ID + " IN (" + TextUtils.join(",", changes.getIds()) + ")");
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop the cars, they are read again on next use.
+     */
+    void invalidate() {
+        mLock.writeLock().lock();
+        try {
+            mLoaded = false;
+            mCars.clear();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded(SQLiteDatabase db) {
+        if (mLoaded) {
+            return;
+        }
+        mLock.writeLock().lock();
+        try {
+            if (!mLoaded) {
+                mCars.clear();
+                readCars(db, null);
+                mLoaded = true;
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Read the cars matching the selection into the model. Called with the write lock held.
+     */
+    private void readCars(SQLiteDatabase db, String selection) {
+        // The view gives the name and email of the supplier of every car
+        Cursor cursor = db.query(CarEntry.VIEW_NAME, COLUMNS, selection, null, null, null, null);
+        try {
+            Car.Columns columns = new Car.Columns(cursor);
+            while (cursor.moveToNext()) {
+                Car car = Car.fromCursor(cursor, columns);
+                mCars.put(car.getId(), car);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the index of the first car whose ID is bigger than the given one.
+     */
+    private int firstIndexAfter(long id) {
+        int low = 0;
+        int high = mCars.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mCars.keyAt(middle) <= id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Look up the index in {@link #COLUMNS} of every column of the projection once.
+     */
+    private static int[] resolve(String[] projection) {
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columns[i] = indexOfColumn(projection[i]);
+        }
+        return columns;
+    }
+
+    private static int indexOfColumn(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void addRow(MatrixCursor cursor, int[] columns, Car car) {
+        MatrixCursor.RowBuilder row = cursor.newRow();
+        for (int column : columns) {
+            row.add(getValue(car, column));
+        }
+    }
+
+    /**
+     * Return the value of the car for the column at the given index of {@link #COLUMNS}.
+     */
+    private static Object getValue(Car car, int column) {
+        switch (column) {
+            case 0:
+                return car.getId();
+            case 1:
+                return car.getName();
+            case 2:
+                return car.getPrice();
+            case 3:
+                return car.getQuantity();
+            case 4:
+                return car.getSupplierId();
+            case 5:
+                return car.getSupplier();
+            case 6:
+                return car.getEmail();
+            case 7:
+                return car.getImage();
+            case 8:
+                return car.getThumbnail();
+            case 9:
+                return car.getEditorImage();
+            case 10:
+                return car.getVersion();
+            default:
+                throw new IllegalArgumentException("Unknown column " + column);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.edmilson.inventoryapp.data;
+
+import android.content.ContentValues;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+/**
+ * Rules a new car must follow. {@link CarProvider} refuses the cars breaking them, and the
+ * importer checks its rows with them first, so one bad row doesn't fail a whole batch.
+ */
+public final class CarValidator {
+
+    private CarValidator() {
+    }
+
+    /**
+     * Check that the given values describe a valid car, throwing an
+     * {@link IllegalArgumentException} otherwise.
+     */
+    public static void validate(ContentValues values) {
+        // Check if the given name is null
+        String name = values.getAsString(CarEntry.COLUMN_CAR_NAME);
+        if (name == null) {
+            throw new IllegalArgumentException("Car requires a name");
+        }
+
+        // Check if the given price is bigger than 0
+        Integer price = values.getAsInteger(CarEntry.COLUMN_CAR_PRICE);
+        if (price == null || price < 0) {
+            throw new IllegalArgumentException("Car requires a valid price");
+        }
+
+        // Check if the given quantity is bigger than 0
+        Integer quantity = values.getAsInteger(CarEntry.COLUMN_CAR_QUANTITY);
+        if (quantity == null || quantity < 0) {
+            throw new IllegalArgumentException("Car requires a valid quantity");
+        }
+
+        // Check if the car has a supplier, given either by its ID or by its name and email
+        if (values.getAsLong(CarEntry.COLUMN_CAR_SUPPLIER_ID) == null) {
+            // Check if the given supplier is null
+            String supplier = values.getAsString(CarEntry.COLUMN_CAR_SUPPLIER);
+            if (supplier == null) {
+                throw new IllegalArgumentException("Car requires a supplier");
+            }
+
+            // Check if the given email is null
+            String email = values.getAsString(CarEntry.COLUMN_CAR_EMAIL);
+            if (email == null) {
+                throw new IllegalArgumentException("Car requires an email");
+            }
+        }
+
+        // Check if the given image is null
+        String image = values.getAsString(CarEntry.COLUMN_CAR_IMAGE);
+        if (image == null) {
+            throw new IllegalArgumentException("Car requires an image");
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.edmilson.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs all the writes of the inventory on a single background thread, so the main thread never
+ * waits for the database. The writes are applied in the order they are queued, so the writes
+ * of one car never overtake each other.
+ * <p>
+ * Writes queued within {@link #BATCH_WINDOW_MS} of each other, such as quick taps on the sell
+ * button, are applied together through {@link ContentResolver#applyBatch} in one transaction.
+ * If one of them fails, the batch is rolled back and its writes are applied one at a time, so
+ * only the failing write is lost. The outcome of every write is handed to its callback on the
+ * main thread.
+ */
+public final class CarWriteQueue {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = CarWriteQueue.class.getSimpleName();
+
+    /** How long the first write of a batch waits for others to join it */
+    private static final long BATCH_WINDOW_MS = 20;
+
+    /**
+     * Callback for a queued write, called on the main thread.
+     */
+    public interface Callback {
+        /**
+         * @param result the Uri of the inserted car or the number of rows written, or null if
+         *               the write failed
+         * @param error  why the write failed, e.g. a {@link CarConflictException}, or null
+         */
+        void onWriteFinished(ContentProviderResult result, Exception error);
+    }
+
+    private static CarWriteQueue sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** The single writer thread */
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    /** Writes waiting for the next batch, in order. Guarded by itself. */
+    private final List<Write> mPending = new ArrayList<>();
+
+    /** Whether a batch is scheduled to take the pending writes. Guarded by {@link #mPending}. */
+    private boolean mScheduled;
+
+    private final Runnable mApplyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            List<Write> writes;
+            synchronized (mPending) {
+                writes = new ArrayList<>(mPending);
+                mPending.clear();
+                mScheduled = false;
+            }
+            apply(writes);
+        }
+    };
+
+    /**
+     * Return the single {@link CarWriteQueue} of the app.
+     */
+    public static synchronized CarWriteQueue getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new CarWriteQueue(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Use {@link #getInstance} in the app. A queue of its own is only made by the benchmarks,
+     * to write through the content resolver of the given context.
+     */
+    CarWriteQueue(Context context) {
+        mContentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Insert a car with the given values.
+     */
+    public void insert(ContentValues values, Callback callback) {
+        enqueue(ContentProviderOperation.newInsert(CarEntry.CONTENT_URI).withValues(values).build(), callback);
+    }
+
+    /**
+     * Update the car, or the cars, behind the given Uri with the given values.
+     */
+    public void update(Uri uri, ContentValues values, Callback callback) {
+        enqueue(ContentProviderOperation.newUpdate(uri).withValues(values).build(), callback);
+    }
+
+    /**
+     * Delete the car, or the cars, behind the given Uri.
+     */
+    public void delete(Uri uri, Callback callback) {
+        enqueue(ContentProviderOperation.newDelete(uri).build(), callback);
+    }
+
+    /**
+     * Sell one unit of the car with the given ID. The count of the result is 0 if it is out
+     * of stock.
+     */
+    public void sell(long id, Callback callback) {
+        // An update needs values, so the amount is given even though one unit is the default
+        ContentValues values = new ContentValues();
+        values.put(CarEntry.SELL_AMOUNT, 1);
+        update(CarEntry.buildSellUri(id), values, callback);
+    }
+
+    /**
+     * Queue the given write of the provider, the callback may be null.
+     */
+    public void enqueue(ContentProviderOperation operation, Callback callback) {
+        synchronized (mPending) {
+            mPending.add(new Write(operation, callback));
+            if (!mScheduled) {
+                mScheduled = true;
+                mExecutor.schedule(mApplyRunnable, BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Apply the given writes in one transaction, or one at a time if the transaction fails.
+     * Runs on the writer thread.
+     */
+    private void apply(List<Write> writes) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(writes.size());
+        for (Write write : writes) {
+            operations.add(write.operation);
+        }
+        ContentProviderResult[] results;
+        try {
+            results = mContentResolver.applyBatch(CarContract.CONTENT_AUTHORITY, operations);
+        } catch (OperationApplicationException | RemoteException | RuntimeException e) {
+            if (writes.size() == 1) {
+                if (e instanceof CarConflictException) {
+                    // Expected when two writers race, the callback decides what to do
+                    Log.w(LOG_TAG, e.getMessage());
+                } else {
+                    Log.e(LOG_TAG, "Failed to apply " + writes.get(0).operation, e);
+                }
+                deliver(writes.get(0), null, e);
+                return;
+            }
+            // Nothing of the batch was written, find out which write failed
+            for (Write write : writes) {
+                apply(Collections.singletonList(write));
+            }
+            return;
+        }
+        for (int i = 0; i < writes.size(); i++) {
+            deliver(writes.get(i), results[i], null);
+        }
+    }
+
+    private void deliver(final Write write, final ContentProviderResult result, final Exception error) {
+        if (write.callback == null) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                write.callback.onWriteFinished(result, error);
+            }
+        });
+    }
+
+    /**
+     * A queued write and its callback.
+     */
+    private static final class Write {
+        final ContentProviderOperation operation;
+        final Callback callback;
+
+        Write(ContentProviderOperation operation, Callback callback) {
+            this.operation = operation;
+            this.callback = callback;
+        }
+    }
+}
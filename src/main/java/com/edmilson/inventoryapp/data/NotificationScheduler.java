@@ -0,0 +1,102 @@
+package com.edmilson.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+import com.edmilson.inventoryapp.data.CarContract.SupplierEntry;
+
+/**
+ * Holds back the change notifications of the provider for a short window, so a burst of
+ * writes (e.g. tapping "buy" ten times) makes the loaders query the cars once instead of once
+ * per write. All the changes of the window are merged and notified together when it ends.
+ * <p>
+ * Only the URIs of the cars that changed are notified, so the observers of other cars are left
+ * alone, followed by a single {@link CarEntry#CHANGES_URI} describing all the changes.
+ */
+final class NotificationScheduler {
+
+    private final ContentResolver mContentResolver;
+
+    /** How long a notification may be held back, in milliseconds */
+    private final long mWindowMs;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** Changes since the last flush, guarded by itself */
+    private CarChanges mPending = new CarChanges();
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param windowMs how long a notification may be held back, or 0 to send them right away
+     */
+    NotificationScheduler(ContentResolver contentResolver, long windowMs) {
+        if (windowMs < 0) {
+            throw new IllegalArgumentException("Notification window can't be negative");
+        }
+        mContentResolver = contentResolver;
+        mWindowMs = windowMs;
+    }
+
+    /**
+     * Notify the given changes at the end of the current window.
+     */
+    void schedule(CarChanges changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (mWindowMs == 0) {
+            send(changes);
+            return;
+        }
+        synchronized (this) {
+            // The window starts with the first change, later ones don't push it back
+            if (mPending.isEmpty()) {
+                mHandler.postDelayed(mFlushRunnable, mWindowMs);
+            }
+            mPending.addAll(changes);
+        }
+    }
+
+    /**
+     * Send all the pending notifications now, e.g. once a transaction is committed.
+     */
+    void flush() {
+        CarChanges changes;
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+            mHandler.removeCallbacks(mFlushRunnable);
+            changes = mPending;
+            mPending = new CarChanges();
+        }
+        send(changes);
+    }
+
+    private void send(CarChanges changes) {
+        if (changes.hasSuppliers()) {
+            mContentResolver.notifyChange(SupplierEntry.CONTENT_URI, null);
+        }
+        if (!changes.hasCars()) {
+            return;
+        }
+        if (changes.isAll()) {
+            // The cars that changed aren't known, which concerns the observers of every car
+            mContentResolver.notifyChange(CarEntry.CONTENT_URI, null);
+        } else {
+            for (long id : changes.getIds()) {
+                mContentResolver.notifyChange(ContentUris.withAppendedId(CarEntry.CONTENT_URI, id), null);
+            }
+        }
+        mContentResolver.notifyChange(changes.toUri(), null);
+    }
+}
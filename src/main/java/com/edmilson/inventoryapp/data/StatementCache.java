@@ -0,0 +1,90 @@
+package com.edmilson.inventoryapp.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Pool of compiled statements, so the fixed SQL of the provider is only compiled once.
+ * <p>
+ * A statement holds its own bindings, so it can only be used by one thread at a time: it is
+ * taken out of the pool by {@link #acquire(SQLiteDatabase, String)} and put back by
+ * {@link #release(SQLiteStatement)}. Nothing is locked while it is in use, so a thread holding
+ * a statement never waits for another one while that one waits for the database.
+ */
+final class StatementCache {
+
+    /** Number of idle statements kept for each SQL string */
+    private static final int MAX_IDLE_PER_SQL = 2;
+
+    /** The database the idle statements were compiled on */
+    private SQLiteDatabase mDatabase;
+
+    /** Idle statements, by SQL string */
+    private final Map<String, ArrayDeque<SQLiteStatement>> mIdle = new HashMap<>();
+
+    /** Statements in use, with their SQL string and database */
+    private final Map<SQLiteStatement, String> mInUseSql = new IdentityHashMap<>();
+    private final Map<SQLiteStatement, SQLiteDatabase> mInUseDatabase = new IdentityHashMap<>();
+
+    /**
+     * Take a statement for the given SQL out of the pool, compiling it if there is none left.
+     * It must be given back through {@link #release(SQLiteStatement)} once done.
+     */
+    synchronized SQLiteStatement acquire(SQLiteDatabase database, String sql) {
+        if (database != mDatabase) {
+            // The database was opened again, the statements of the old one can't be used
+            clear();
+            mDatabase = database;
+        }
+        ArrayDeque<SQLiteStatement> idle = mIdle.get(sql);
+        SQLiteStatement statement = idle != null ? idle.poll() : null;
+        if (statement == null) {
+            statement = database.compileStatement(sql);
+        }
+        mInUseSql.put(statement, sql);
+        mInUseDatabase.put(statement, database);
+        return statement;
+    }
+
+    /**
+     * Give back a statement taken by {@link #acquire(SQLiteDatabase, String)}. It is closed
+     * instead if the cache was cleared in the meantime, or if enough of them are idle already.
+     */
+    synchronized void release(SQLiteStatement statement) {
+        String sql = mInUseSql.remove(statement);
+        SQLiteDatabase database = mInUseDatabase.remove(statement);
+        statement.clearBindings();
+        if (sql == null || database != mDatabase) {
+            statement.close();
+            return;
+        }
+        ArrayDeque<SQLiteStatement> idle = mIdle.get(sql);
+        if (idle == null) {
+            idle = new ArrayDeque<>();
+            mIdle.put(sql, idle);
+        }
+        if (idle.size() < MAX_IDLE_PER_SQL) {
+            idle.push(statement);
+        } else {
+            statement.close();
+        }
+    }
+
+    /**
+     * Close all the idle statements. The ones in use are closed when they are released.
+     */
+    synchronized void clear() {
+        for (ArrayDeque<SQLiteStatement> idle : mIdle.values()) {
+            for (SQLiteStatement statement : idle) {
+                statement.close();
+            }
+        }
+        mIdle.clear();
+        mDatabase = null;
+    }
+}
@@ -0,0 +1,123 @@
+package com.edmilson.inventoryapp.image;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Helper methods to decode car pictures scaled down to the size they are going to be shown at.
+ */
+public final class BitmapDecoder {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = BitmapDecoder.class.getSimpleName();
+
+    // To prevent instantiation
+    private BitmapDecoder() {}
+
+    /**
+     * Decode the image behind the given Uri, sampled down so that it is not (much) bigger than
+     * the requested width and height. The Uri can be a file, content or android.resource Uri.
+     *
+     * @return the decoded bitmap, or null if the image could not be read
+     */
+    public static Bitmap decodeSampledBitmap(ContentResolver resolver, Uri uri,
+                                             int reqWidth, int reqHeight) {
+        // First decode with inJustDecodeBounds=true to check the dimensions of the picture
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        if (!decode(resolver, uri, options) || options.outWidth <= 0) {
+            return null;
+        }
+
+        // Then decode the picture again with the calculated inSampleSize
+        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return decodeBitmap(resolver, uri, options);
+    }
+
+    /**
+     * Calculate the largest power of 2 sample size that keeps both width and height of the
+     * decoded image larger than or equal to the requested width and height.
+     */
+    public static int calculateInSampleSize(BitmapFactory.Options options,
+                                            int reqWidth, int reqHeight) {
+        // Raw height and width of the image
+        final int height = options.outHeight;
+        final int width = options.outWidth;
+        int inSampleSize = 1;
+
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return inSampleSize;
+        }
+
+        if (height > reqHeight || width > reqWidth) {
+            final int halfHeight = height / 2;
+            final int halfWidth = width / 2;
+            while ((halfHeight / inSampleSize) >= reqHeight
+                    && (halfWidth / inSampleSize) >= reqWidth) {
+                inSampleSize *= 2;
+            }
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Run BitmapFactory over the stream of the given Uri. Return false if the stream
+     * could not be opened.
+     */
+    private static boolean decode(ContentResolver resolver, Uri uri, BitmapFactory.Options options) {
+        InputStream in = null;
+        try {
+            in = resolver.openInputStream(uri);
+            if (in == null) {
+                return false;
+            }
+            BitmapFactory.decodeStream(in, null, options);
+            return true;
+        } catch (IOException | SecurityException e) {
+            Log.e(LOG_TAG, "Cannot read image " + uri, e);
+            return false;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Decode the bitmap of the given Uri with the given options.
+     */
+    private static Bitmap decodeBitmap(ContentResolver resolver, Uri uri, BitmapFactory.Options options) {
+        InputStream in = null;
+        try {
+            in = resolver.openInputStream(uri);
+            if (in == null) {
+                return null;
+            }
+            return BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException | SecurityException e) {
+            Log.e(LOG_TAG, "Cannot read image " + uri, e);
+            return null;
+        } catch (OutOfMemoryError e) {
+            Log.e(LOG_TAG, "Not enough memory to decode " + uri, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Nothing else to do here
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.edmilson.inventoryapp.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Two level cache of scaled down car pictures, keyed by the image Uri stored in
+ * {@link com.edmilson.inventoryapp.data.CarContract.CarEntry#COLUMN_CAR_IMAGE} plus the size
+ * the picture was decoded at.
+ * <p>
+ * The first level is an in-memory LRU cache sized from the available heap. The second level
+ * keeps the scaled down pictures as JPEG files in the app cache directory, so they survive
+ * process restarts. Both levels drop least recently used entries once they are full.
+ */
+public final class ImageCache {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ImageCache.class.getSimpleName();
+
+    /** Name of the directory, inside the app cache directory, holding the scaled pictures */
+    private static final String DISK_CACHE_DIR = "thumbnails";
+
+    /** Maximum size of the disk cache, in bytes */
+    private static final long DISK_CACHE_SIZE = 20 * 1024 * 1024;
+
+    /** Quality of the JPEG files written to the disk cache */
+    private static final int DISK_CACHE_QUALITY = 85;
+
+    private static ImageCache sInstance;
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final File mDiskCacheDir;
+
+    /** Current size of the disk cache, -1 until the directory is scanned for the first time */
+    private long mDiskCacheSize = -1;
+
+    /**
+     * Return the single {@link ImageCache} of the app.
+     */
+    public static synchronized ImageCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ImageCache(Context context) {
+        // Use 1/8th of the available heap for the memory cache, sized in kilobytes
+        final int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
+        mMemoryCache = new LruCache<String, Bitmap>(maxMemory / 8) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+        mDiskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+    }
+
+    /**
+     * Build the cache key of a picture decoded at the given size.
+     */
+    public static String getKey(String uriString, int width, int height) {
+        return uriString + "@" + width + "x" + height;
+    }
+
+    /**
+     * Return the bitmap kept in memory for the given key, or null. Safe to call on the main thread.
+     */
+    public Bitmap getFromMemory(String key) {
+        return mMemoryCache.get(key);
+    }
+
+    /**
+     * Return the bitmap for the given picture from memory or, failing that, from disk.
+     * Must not be called on the main thread.
+     */
+    public Bitmap get(String uriString, int width, int height) {
+        String key = getKey(uriString, width, height);
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap == null) {
+            bitmap = getFromDisk(uriString, width, height);
+            if (bitmap != null) {
+                mMemoryCache.put(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Store a bitmap decoded for the given picture in both cache levels.
+     * Must not be called on the main thread.
+     */
+    public void put(String uriString, int width, int height, Bitmap bitmap) {
+        mMemoryCache.put(getKey(uriString, width, height), bitmap);
+        putOnDisk(uriString, width, height, bitmap);
+    }
+
+    /**
+     * Drop every cached rendition of the given picture, e.g. because the car was deleted or
+     * its picture was replaced.
+     */
+    public void invalidate(String uriString) {
+        if (uriString == null) {
+            return;
+        }
+
+        // Remove all the sizes kept in memory
+        String keyPrefix = uriString + "@";
+        for (Map.Entry<String, Bitmap> entry : mMemoryCache.snapshot().entrySet()) {
+            if (entry.getKey().startsWith(keyPrefix)) {
+                mMemoryCache.remove(entry.getKey());
+            }
+        }
+
+        // And all the sizes written to disk
+        synchronized (mDiskCacheDir) {
+            File[] files = mDiskCacheDir.listFiles();
+            if (files == null) {
+                return;
+            }
+            String filePrefix = hash(uriString) + "_";
+            for (File file : files) {
+                if (file.getName().startsWith(filePrefix)) {
+                    deleteFromDisk(file);
+                }
+            }
+        }
+    }
+
+    private Bitmap getFromDisk(String uriString, int width, int height) {
+        synchronized (mDiskCacheDir) {
+            File file = getDiskFile(uriString, width, height);
+            if (!file.exists()) {
+                return null;
+            }
+            // Mark the file as recently used, so it is not the next one to be evicted
+            file.setLastModified(System.currentTimeMillis());
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        }
+    }
+
+    private void putOnDisk(String uriString, int width, int height, Bitmap bitmap) {
+        synchronized (mDiskCacheDir) {
+            if (!mDiskCacheDir.exists() && !mDiskCacheDir.mkdirs()) {
+                Log.e(LOG_TAG, "Cannot create the disk cache directory " + mDiskCacheDir);
+                return;
+            }
+            File file = getDiskFile(uriString, width, height);
+            // Scan the directory before the file changes, and remember the size of the file it
+            // replaces (0 if there is none), so only the difference is added to the total
+            long size = getDiskCacheSize();
+            long oldLength = file.length();
+            OutputStream out = null;
+            try {
+                out = new FileOutputStream(file);
+                bitmap.compress(Bitmap.CompressFormat.JPEG, DISK_CACHE_QUALITY, out);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Cannot write " + file, e);
+                // The old file is already truncated, don't leave a partial one behind
+                file.delete();
+                mDiskCacheSize = size - oldLength;
+                return;
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException ignored) {
+                        // Nothing else to do here
+                    }
+                }
+            }
+            mDiskCacheSize = size + file.length() - oldLength;
+            trimDiskCache();
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the disk cache fits in {@link #DISK_CACHE_SIZE}.
+     */
+    private void trimDiskCache() {
+        if (mDiskCacheSize <= DISK_CACHE_SIZE) {
+            return;
+        }
+        File[] files = mDiskCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                return Long.compare(first.lastModified(), second.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (mDiskCacheSize <= DISK_CACHE_SIZE) {
+                break;
+            }
+            deleteFromDisk(file);
+        }
+    }
+
+    private void deleteFromDisk(File file) {
+        long length = file.length();
+        if (file.delete() && mDiskCacheSize >= 0) {
+            mDiskCacheSize -= length;
+        }
+    }
+
+    /**
+     * Size of the disk cache, scanning the directory the first time it is needed.
+     */
+    private long getDiskCacheSize() {
+        if (mDiskCacheSize < 0) {
+            long size = 0;
+            File[] files = mDiskCacheDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    size += file.length();
+                }
+            }
+            mDiskCacheSize = size;
+        }
+        return mDiskCacheSize;
+    }
+
+    /**
+     * File holding the given picture at the given size. All the sizes of the same picture share
+     * the hash of its Uri as prefix, so they can be found again by {@link #invalidate(String)}.
+     */
+    private File getDiskFile(String uriString, int width, int height) {
+        return new File(mDiskCacheDir, hash(uriString) + "_" + width + "x" + height + ".jpg");
+    }
+
+    /**
+     * Turn a Uri into something that can be safely used as a file name.
+     */
+    private static String hash(String uriString) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] bytes = digest.digest(uriString.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                builder.append(String.format("%02x", b & 0xff));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Every Android device ships MD5 and UTF-8, fall back on the hash code anyway
+            return Integer.toHexString(uriString.hashCode());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.edmilson.inventoryapp.image;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.edmilson.inventoryapp.R;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads car pictures into ImageViews. Pictures are decoded on a background executor, sampled
+ * down to the size of the target ImageView, and a placeholder is shown until they are ready.
+ * When an ImageView is recycled for another row its pending request is cancelled.
+ * Decoded pictures are kept in the {@link ImageCache}, so showing them again is cheap.
+ * <p>
+ * All the public methods must be called from the main thread, except {@link #prefetch}.
+ */
+public final class ImageLoader {
+
+    /** Number of threads decoding pictures at the same time */
+    private static final int DECODE_THREADS = 2;
+
+    /** Drawable shown while the picture is being decoded, or if it can't be decoded at all */
+    private static final int PLACEHOLDER = R.drawable.car_default;
+
+    private static ImageLoader sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final ImageCache mImageCache;
+    private final DisplayMetrics mDisplayMetrics;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor;
+
+    /** Pending request of every ImageView, so it can be cancelled when the view is recycled */
+    private final Map<ImageView, LoadTask> mPendingTasks = new WeakHashMap<>();
+
+    /**
+     * Return the single {@link ImageLoader} of the app.
+     */
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ImageLoader(Context context) {
+        mContentResolver = context.getContentResolver();
+        mImageCache = ImageCache.getInstance(context);
+        mDisplayMetrics = context.getResources().getDisplayMetrics();
+        mExecutor = Executors.newFixedThreadPool(DECODE_THREADS, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "ImageLoader #" + mCount.getAndIncrement());
+            }
+        });
+    }
+
+    /**
+     * Show the picture behind the given Uri string on the ImageView. Any request still pending
+     * for the same ImageView is cancelled.
+     */
+    public void load(String uriString, ImageView imageView) {
+        cancel(imageView);
+
+        if (uriString == null || uriString.isEmpty()) {
+            imageView.setImageResource(PLACEHOLDER);
+            return;
+        }
+
+        // Show the picture right away if it is still in memory
+        int width = getTargetWidth(imageView);
+        int height = getTargetHeight(imageView);
+        Bitmap cached = mImageCache.getFromMemory(ImageCache.getKey(uriString, width, height));
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+
+        imageView.setImageResource(PLACEHOLDER);
+        LoadTask task = new LoadTask(uriString, imageView, width, height);
+        mPendingTasks.put(imageView, task);
+        task.mFuture = mExecutor.submit(task);
+    }
+
+    /**
+     * Decode the pictures behind the given Uri strings into the {@link ImageCache} at the given
+     * size, without showing them, so the ImageViews loading them later at that size find them in
+     * memory. May be called from any thread.
+     *
+     * @param whenDone run on a decoding thread once all the pictures are in the cache, may be null
+     */
+    public void prefetch(List<String> uriStrings, final int width, final int height, final Runnable whenDone) {
+        final AtomicInteger remaining = new AtomicInteger(uriStrings.size());
+        if (uriStrings.isEmpty() && whenDone != null) {
+            whenDone.run();
+        }
+        for (final String uriString : uriStrings) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // A picture which can't be decoded is left out, it shows the placeholder anyway
+                    if (uriString != null && !uriString.isEmpty()) {
+                        decode(uriString, width, height);
+                    }
+                    if (remaining.decrementAndGet() == 0 && whenDone != null) {
+                        whenDone.run();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Cancel the pending request of the given ImageView, if there is one.
+     */
+    public void cancel(ImageView imageView) {
+        LoadTask task = mPendingTasks.remove(imageView);
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Width the picture should be decoded at. Before the first layout pass the ImageView has
+     * no size yet, so fall back on its layout params and then on the screen size.
+     */
+    private int getTargetWidth(ImageView imageView) {
+        int width = imageView.getWidth();
+        if (width <= 0) {
+            ViewGroup.LayoutParams params = imageView.getLayoutParams();
+            width = params != null ? params.width : 0;
+        }
+        return width > 0 ? width : mDisplayMetrics.widthPixels;
+    }
+
+    /**
+     * Height the picture should be decoded at, see {@link #getTargetWidth(ImageView)}.
+     */
+    private int getTargetHeight(ImageView imageView) {
+        int height = imageView.getHeight();
+        if (height <= 0) {
+            ViewGroup.LayoutParams params = imageView.getLayoutParams();
+            height = params != null ? params.height : 0;
+        }
+        return height > 0 ? height : mDisplayMetrics.heightPixels;
+    }
+
+    /**
+     * Read the picture from the cache, or decode it and add it to the cache. Runs on a decoding
+     * thread.
+     *
+     * @return the picture, or null if it can't be decoded
+     */
+    private Bitmap decode(String uriString, int width, int height) {
+        Bitmap bitmap = mImageCache.get(uriString, width, height);
+        if (bitmap == null) {
+            bitmap = BitmapDecoder.decodeSampledBitmap(mContentResolver, Uri.parse(uriString), width, height);
+            if (bitmap != null) {
+                mImageCache.put(uriString, width, height, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Read one picture from the cache, or decode it, in the background and post it back to
+     * its ImageView.
+     */
+    private final class LoadTask implements Runnable {
+
+        private final String mUriString;
+        private final WeakReference<ImageView> mImageViewReference;
+        private final int mWidth;
+        private final int mHeight;
+        private volatile boolean mCancelled;
+        private Future<?> mFuture;
+
+        LoadTask(String uriString, ImageView imageView, int width, int height) {
+            mUriString = uriString;
+            mImageViewReference = new WeakReference<>(imageView);
+            mWidth = width;
+            mHeight = height;
+        }
+
+        void cancel() {
+            mCancelled = true;
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            // Skip the decoding if the ImageView was recycled while the task was waiting
+            if (mCancelled || mImageViewReference.get() == null) {
+                return;
+            }
+            Bitmap bitmap = decode(mUriString, mWidth, mHeight);
+            if (bitmap == null || mCancelled) {
+                return;
+            }
+            final Bitmap result = bitmap;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(result);
+                }
+            });
+        }
+
+        /**
+         * Set the bitmap on the ImageView, unless the view was bound to another picture meanwhile.
+         * Called on the main thread.
+         */
+        private void deliver(Bitmap bitmap) {
+            ImageView imageView = mImageViewReference.get();
+            if (mCancelled || imageView == null || mPendingTasks.get(imageView) != this) {
+                return;
+            }
+            mPendingTasks.remove(imageView);
+            imageView.setImageBitmap(bitmap);
+        }
+    }
+}
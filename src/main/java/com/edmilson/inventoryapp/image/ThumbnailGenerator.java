@@ -0,0 +1,206 @@
+package com.edmilson.inventoryapp.image;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.edmilson.inventoryapp.R;
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+import com.edmilson.inventoryapp.data.CarWriteQueue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes the smaller renditions of a car picture right after it is taken: a thumbnail sized
+ * for the list rows and a medium picture sized for the editor. They are stored next to the
+ * original file, so the multi-megabyte camera picture only has to be decoded once.
+ */
+public final class ThumbnailGenerator {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ThumbnailGenerator.class.getSimpleName();
+
+    /** Suffixes added to the name of the original picture */
+    private static final String THUMBNAIL_SUFFIX = "_thumb.jpg";
+    private static final String EDITOR_SUFFIX = "_editor.jpg";
+
+    /** Quality of the JPEG renditions */
+    private static final int THUMBNAIL_QUALITY = 80;
+    private static final int EDITOR_QUALITY = 85;
+
+    /** Single background thread writing the renditions, shared by every generator */
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Callback for {@link #generate(File, Callback)}, called on the main thread.
+     */
+    public interface Callback {
+        /**
+         * @param renditions the Uris of the written renditions, or null if they couldn't be written
+         */
+        void onRenditionsReady(Renditions renditions);
+    }
+
+    /**
+     * Uris of the renditions of one picture.
+     */
+    public static final class Renditions {
+        public final Uri thumbnailUri;
+        public final Uri editorUri;
+
+        Renditions(Uri thumbnailUri, Uri editorUri) {
+            this.thumbnailUri = thumbnailUri;
+            this.editorUri = editorUri;
+        }
+    }
+
+    private final ContentResolver mContentResolver;
+    private final CarWriteQueue mWriteQueue;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final int mThumbnailWidth;
+    private final int mThumbnailHeight;
+    private final int mEditorSize;
+
+    public ThumbnailGenerator(Context context) {
+        mContentResolver = context.getContentResolver();
+        mWriteQueue = CarWriteQueue.getInstance(context);
+        Resources resources = context.getResources();
+        mThumbnailWidth = resources.getDimensionPixelSize(R.dimen.car_thumbnail_width);
+        mThumbnailHeight = resources.getDimensionPixelSize(R.dimen.car_thumbnail_height);
+        mEditorSize = resources.getDimensionPixelSize(R.dimen.car_editor_image_size);
+    }
+
+    /**
+     * Write the renditions of the given picture on a background thread and hand them over
+     * to the callback when done.
+     */
+    public void generate(final File original, final Callback callback) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Renditions renditions = generateNow(original);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onRenditionsReady(renditions);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Give the renditions of the given picture to the cars showing it which don't have them yet,
+     * once they are written. The update is queued on the {@link CarWriteQueue} after the writes
+     * already there, so a car saved before its renditions were ready still gets them, whether
+     * or not the editor is still open by then.
+     */
+    public void updateCars(final File original) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // The executor is serial, so the renditions queued before are written by now.
+                // If they couldn't be, the cars keep showing the original picture.
+                File thumbnailFile = getRenditionFile(original, THUMBNAIL_SUFFIX);
+                File editorFile = getRenditionFile(original, EDITOR_SUFFIX);
+                if (!thumbnailFile.exists() || !editorFile.exists()) {
+                    return;
+                }
+                ContentValues values = new ContentValues();
+                values.put(CarEntry.COLUMN_CAR_THUMBNAIL, Uri.fromFile(thumbnailFile).toString());
+                values.put(CarEntry.COLUMN_CAR_EDITOR_IMAGE, Uri.fromFile(editorFile).toString());
+                mWriteQueue.enqueue(ContentProviderOperation.newUpdate(CarEntry.CONTENT_URI)
+                        .withValues(values)
+                        .withSelection(CarEntry.COLUMN_CAR_IMAGE + "=? AND "
+                                        + CarEntry.COLUMN_CAR_THUMBNAIL + " IS NULL",
+                                new String[]{Uri.fromFile(original).toString()})
+                        .build(), null);
+            }
+        });
+    }
+
+    /**
+     * Write the renditions of the given picture on the calling thread.
+     *
+     * @return the Uris of the renditions, or null if they couldn't be written
+     */
+    public Renditions generateNow(File original) {
+        // Decode the original once, big enough for the larger of the two renditions
+        Bitmap source = BitmapDecoder.decodeSampledBitmap(mContentResolver, Uri.fromFile(original),
+                mEditorSize, mEditorSize);
+        if (source == null) {
+            return null;
+        }
+
+        try {
+            File editorFile = getRenditionFile(original, EDITOR_SUFFIX);
+            File thumbnailFile = getRenditionFile(original, THUMBNAIL_SUFFIX);
+            if (!write(source, mEditorSize, mEditorSize, editorFile, EDITOR_QUALITY)
+                    || !write(source, mThumbnailWidth, mThumbnailHeight, thumbnailFile, THUMBNAIL_QUALITY)) {
+                // Don't leave a partial rendition behind for {@link #updateCars} to find
+                editorFile.delete();
+                thumbnailFile.delete();
+                return null;
+            }
+            return new Renditions(Uri.fromFile(thumbnailFile), Uri.fromFile(editorFile));
+        } finally {
+            source.recycle();
+        }
+    }
+
+    /**
+     * File of the rendition of the original picture with the given suffix.
+     */
+    private static File getRenditionFile(File original, String suffix) {
+        String name = original.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return new File(original.getParentFile(), name + suffix);
+    }
+
+    /**
+     * Scale the source down so it fits in the given box and write it as JPEG to the given file.
+     */
+    private static boolean write(Bitmap source, int maxWidth, int maxHeight, File file, int quality) {
+        float scale = Math.min(1f, Math.min((float) maxWidth / source.getWidth(),
+                (float) maxHeight / source.getHeight()));
+        Bitmap scaled = scale < 1f
+                ? Bitmap.createScaledBitmap(source, Math.max(1, Math.round(source.getWidth() * scale)),
+                Math.max(1, Math.round(source.getHeight() * scale)), true)
+                : source;
+
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            return scaled.compress(Bitmap.CompressFormat.JPEG, quality, out);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Cannot write " + file, e);
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // Nothing else to do here
+                }
+            }
+            if (scaled != source) {
+                scaled.recycle();
+            }
+        }
+    }
+}
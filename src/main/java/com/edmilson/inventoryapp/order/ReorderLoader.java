@@ -0,0 +1,56 @@
+package com.edmilson.inventoryapp.order;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+import java.util.List;
+
+/**
+ * Plans the orders of the cars running low on a background thread. The orders are a one-off
+ * result, they aren't planned again when the cars change.
+ */
+public class ReorderLoader extends AsyncTaskLoader<List<SupplierOrder>> {
+
+    private final ReorderPlanner mPlanner;
+
+    /** The orders planned, kept to be delivered again, e.g. after a rotation */
+    private List<SupplierOrder> mOrders;
+
+    public ReorderLoader(Context context, int threshold) {
+        super(context);
+        mPlanner = new ReorderPlanner(threshold, ReorderPlanner.DEFAULT_SALES_WINDOW_MS);
+    }
+
+    @Override
+    public List<SupplierOrder> loadInBackground() {
+        return mPlanner.plan(getContext().getContentResolver());
+    }
+
+    @Override
+    public void deliverResult(List<SupplierOrder> orders) {
+        mOrders = orders;
+        if (isStarted()) {
+            super.deliverResult(orders);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mOrders != null) {
+            deliverResult(mOrders);
+        } else {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        onStopLoading();
+        mOrders = null;
+    }
+}
@@ -0,0 +1,100 @@
+package com.edmilson.inventoryapp.order;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.text.format.DateUtils;
+
+import com.edmilson.inventoryapp.data.CarContract.ReorderEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Works out what to order from every supplier. The cars running low are read in a single
+ * query, sorted by supplier, and turned into one {@link SupplierOrder} per supplier in the
+ * same pass.
+ * <p>
+ * Each car is ordered up to the units it sold during the sales window, so it lasts as long
+ * again, plus the low stock threshold kept as a safety stock.
+ */
+public final class ReorderPlanner {
+
+    /** Default length of the sales window, see {@link #ReorderPlanner(int, long)} */
+    public static final long DEFAULT_SALES_WINDOW_MS = 30 * DateUtils.DAY_IN_MILLIS;
+
+    private final int mThreshold;
+    private final long mSalesWindowMs;
+
+    /**
+     * @param threshold cars with fewer units than this are reordered
+     * @param salesWindowMs how far back the sales are counted, in milliseconds
+     */
+    public ReorderPlanner(int threshold, long salesWindowMs) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        if (salesWindowMs < 0) {
+            throw new IllegalArgumentException("Sales window can't be negative");
+        }
+        mThreshold = threshold;
+        mSalesWindowMs = salesWindowMs;
+    }
+
+    /**
+     * Plan the orders, one per supplier having cars running low, sorted by supplier. Don't
+     * call it on the main thread.
+     */
+    public List<SupplierOrder> plan(ContentResolver contentResolver) {
+        long since = System.currentTimeMillis() - mSalesWindowMs;
+        Cursor cursor = contentResolver.query(ReorderEntry.buildReorderUri(mThreshold, since),
+                null, null, null, null);
+        List<SupplierOrder> orders = new ArrayList<>();
+        if (cursor == null) {
+            return orders;
+        }
+        try {
+            int idColumn = cursor.getColumnIndexOrThrow(ReorderEntry._ID);
+            int nameColumn = cursor.getColumnIndexOrThrow(ReorderEntry.COLUMN_CAR_NAME);
+            int quantityColumn = cursor.getColumnIndexOrThrow(ReorderEntry.COLUMN_CAR_QUANTITY);
+            int supplierIdColumn = cursor.getColumnIndexOrThrow(ReorderEntry.COLUMN_CAR_SUPPLIER_ID);
+            int supplierColumn = cursor.getColumnIndexOrThrow(ReorderEntry.COLUMN_CAR_SUPPLIER);
+            int emailColumn = cursor.getColumnIndexOrThrow(ReorderEntry.COLUMN_CAR_EMAIL);
+            int recentUnitsColumn = cursor.getColumnIndexOrThrow(ReorderEntry.COLUMN_RECENT_UNITS);
+
+            long supplierId = -1;
+            String supplier = null;
+            String email = null;
+            List<SupplierOrder.Line> lines = null;
+            while (cursor.moveToNext()) {
+                // The rows of a supplier follow each other, a new ID starts the next order
+                if (lines == null || cursor.getLong(supplierIdColumn) != supplierId) {
+                    if (lines != null) {
+                        orders.add(new SupplierOrder(supplierId, supplier, email, lines));
+                    }
+                    supplierId = cursor.getLong(supplierIdColumn);
+                    supplier = cursor.getString(supplierColumn);
+                    email = cursor.getString(emailColumn);
+                    lines = new ArrayList<>();
+                }
+                int quantity = cursor.getInt(quantityColumn);
+                int recentUnits = cursor.getInt(recentUnitsColumn);
+                lines.add(new SupplierOrder.Line(cursor.getLong(idColumn), cursor.getString(nameColumn),
+                        quantity, recentUnits, getOrderQuantity(quantity, recentUnits)));
+            }
+            if (lines != null) {
+                orders.add(new SupplierOrder(supplierId, supplier, email, lines));
+            }
+        } finally {
+            cursor.close();
+        }
+        return orders;
+    }
+
+    /**
+     * Return the number of units to order of a car, bringing its stock up to its recent sales
+     * plus the threshold. It is at least 1, since the car has fewer units than the threshold.
+     */
+    int getOrderQuantity(int quantity, int recentUnits) {
+        return Math.max(mThreshold + recentUnits - quantity, 1);
+    }
+}
@@ -0,0 +1,106 @@
+package com.edmilson.inventoryapp.order;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+
+import com.edmilson.inventoryapp.R;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable order of the cars running low of one supplier, with the number of units to order
+ * of each of them.
+ */
+public final class SupplierOrder {
+
+    /**
+     * One car of the order.
+     */
+    public static final class Line {
+        public final long carId;
+        public final String carName;
+
+        /** Units in stock */
+        public final int quantity;
+
+        /** Units sold during the sales window of the planner */
+        public final int recentUnits;
+
+        /** Units to order */
+        public final int orderQuantity;
+
+        Line(long carId, String carName, int quantity, int recentUnits, int orderQuantity) {
+            this.carId = carId;
+            this.carName = carName;
+            this.quantity = quantity;
+            this.recentUnits = recentUnits;
+            this.orderQuantity = orderQuantity;
+        }
+    }
+
+    private final long mSupplierId;
+    private final String mSupplier;
+    private final String mEmail;
+    private final List<Line> mLines;
+
+    SupplierOrder(long supplierId, String supplier, String email, List<Line> lines) {
+        mSupplierId = supplierId;
+        mSupplier = supplier;
+        mEmail = email;
+        mLines = Collections.unmodifiableList(lines);
+    }
+
+    public long getSupplierId() {
+        return mSupplierId;
+    }
+
+    public String getSupplier() {
+        return mSupplier;
+    }
+
+    public String getEmail() {
+        return mEmail;
+    }
+
+    public List<Line> getLines() {
+        return mLines;
+    }
+
+    /**
+     * Return the number of units ordered, all cars together.
+     */
+    public int getTotalUnits() {
+        int total = 0;
+        for (Line line : mLines) {
+            total += line.orderQuantity;
+        }
+        return total;
+    }
+
+    /**
+     * Write the order document sent to the supplier: one line per car, then the total.
+     */
+    public String toText(Context context) {
+        StringBuilder text = new StringBuilder();
+        text.append(context.getString(R.string.reorder_greeting, mSupplier)).append("\n\n");
+        for (Line line : mLines) {
+            text.append(context.getString(R.string.reorder_line, line.carName, line.orderQuantity))
+                    .append('\n');
+        }
+        text.append('\n').append(context.getString(R.string.reorder_total, getTotalUnits()));
+        return text.toString();
+    }
+
+    /**
+     * Build the intent opening an email app with the order addressed to the supplier.
+     */
+    public Intent toEmailIntent(Context context) {
+        Intent emailIntent = new Intent(Intent.ACTION_SENDTO);
+        emailIntent.setData(Uri.parse("mailto:" + mEmail));
+        emailIntent.putExtra(Intent.EXTRA_SUBJECT, context.getString(R.string.email_intent_subject));
+        emailIntent.putExtra(Intent.EXTRA_TEXT, toText(context));
+        return emailIntent;
+    }
+}
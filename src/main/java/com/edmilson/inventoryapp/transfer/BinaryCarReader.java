@@ -0,0 +1,118 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.content.ContentValues;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Reads cars from a binary file written by {@link CarExporter}, see {@link BinaryFormat}.
+ * <p>
+ * The CRC32 of the file is computed while it is read and checked against its trailer: a file
+ * which doesn't match, or ends before its trailer, throws an {@link IOException} at the end.
+ */
+final class BinaryCarReader extends CarRecordReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final CheckedInputStream mChecked;
+    private final DataInputStream mIn;
+
+    /** Bytes of the current record, grown when a longer one comes */
+    private byte[] mRecord = new byte[256];
+
+    private boolean mFinished;
+
+    /**
+     * @throws IOException if the stream doesn't start with the header of a binary file
+     */
+    BinaryCarReader(InputStream in) throws IOException {
+        mChecked = new CheckedInputStream(in, new CRC32());
+        mIn = new DataInputStream(mChecked);
+        byte[] magic = new byte[BinaryFormat.MAGIC.length];
+        mIn.readFully(magic);
+        if (!Arrays.equals(magic, BinaryFormat.MAGIC)) {
+            throw new IOException("Not a binary car file");
+        }
+        int version = mIn.readUnsignedByte();
+        if (version != BinaryFormat.VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+    }
+
+    @Override
+    boolean readRecord(ContentValues values) throws IOException {
+        if (mFinished) {
+            return false;
+        }
+        try {
+            return readNextRecord(values);
+        } catch (EOFException e) {
+            throw new IOException("The file ends before its trailer, it is truncated or corrupt");
+        }
+    }
+
+    private boolean readNextRecord(ContentValues values) throws IOException {
+        // The checksum of the trailer covers everything before it
+        long checksum = mChecked.getChecksum().getValue();
+        int length = mIn.readInt();
+        if (length == BinaryFormat.END_OF_RECORDS) {
+            long count = mIn.readLong();
+            long expected = mIn.readLong();
+            mFinished = true;
+            if (expected != checksum) {
+                throw new IOException("Checksum mismatch, the file is corrupt");
+            }
+            if (count != getRecordNumber()) {
+                throw new IOException("Expected " + count + " records, read " + getRecordNumber());
+            }
+            return false;
+        }
+        if (length < 0 || length > BinaryFormat.MAX_RECORD_LENGTH) {
+            throw new IOException("Invalid record length " + length);
+        }
+        if (mRecord.length < length) {
+            mRecord = new byte[Math.max(length, mRecord.length * 2)];
+        }
+        mIn.readFully(mRecord, 0, length);
+
+        // The whole record has been read, so a bad one can be skipped
+        ByteBuffer record = ByteBuffer.wrap(mRecord, 0, length);
+        try {
+            putValue(values, CarEntry.COLUMN_CAR_NAME, readString(record));
+            values.put(CarEntry.COLUMN_CAR_PRICE, record.getInt());
+            values.put(CarEntry.COLUMN_CAR_QUANTITY, record.getInt());
+            putValue(values, CarEntry.COLUMN_CAR_SUPPLIER, readString(record));
+            putValue(values, CarEntry.COLUMN_CAR_EMAIL, readString(record));
+            putValue(values, CarEntry.COLUMN_CAR_IMAGE, readString(record));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated record");
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getShort() & 0xFFFF;
+        if (length > record.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(record.array(), record.position(), length, UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
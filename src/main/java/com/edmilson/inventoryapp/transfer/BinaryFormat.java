@@ -0,0 +1,39 @@
+package com.edmilson.inventoryapp.transfer;
+
+/**
+ * Layout of the binary files written by {@link CarExporter} and read by {@link BinaryCarReader}.
+ * All the numbers are big endian.
+ * <ul>
+ * <li>Header: the {@link #MAGIC} bytes, then the {@link #VERSION} byte.</li>
+ * <li>One record per car: its length as an int, then the name, the price and quantity as
+ * ints, the supplier, the email and the image. Every string is its UTF-8 length as an
+ * unsigned short followed by its UTF-8 bytes, an empty string standing for a missing value.</li>
+ * <li>Trailer: {@link #END_OF_RECORDS} in place of a record length, then the number of
+ * records and the CRC32 of all the bytes before the trailer, both as longs.</li>
+ * </ul>
+ * Readers skip the bytes of a record after the fields they know, so fields can be added at
+ * the end of the records without changing the version.
+ */
+final class BinaryFormat {
+
+    /** First bytes of the files */
+    static final byte[] MAGIC = {'C', 'A', 'R', 'S'};
+
+    /** Version of the layout */
+    static final int VERSION = 1;
+
+    /** Extension of the files */
+    static final String EXTENSION = ".cars";
+
+    /** Record length marking the trailer */
+    static final int END_OF_RECORDS = -1;
+
+    /** Longest string, in UTF-8 bytes */
+    static final int MAX_STRING_LENGTH = 0xFFFF;
+
+    /** Longest record a reader accepts, anything longer is taken as a corrupt file */
+    static final int MAX_RECORD_LENGTH = 1024 * 1024;
+
+    private BinaryFormat() {
+    }
+}
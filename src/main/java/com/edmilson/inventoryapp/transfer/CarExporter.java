@@ -0,0 +1,339 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Exports the cars of {@link com.edmilson.inventoryapp.data.CarProvider} to a file, in CSV or in
+ * a compact binary format, both of which {@link CarImporter} reads back.
+ * <p>
+ * The cars are read one page at a time, sorted by ID, so each cursor fits in a single
+ * CursorWindow and no more than one page is ever held in memory. The rows are encoded straight
+ * into a fixed size buffer written to the file channel whenever it is full.
+ * <p>
+ * The file is written next to its final name and renamed once complete, so a failed export
+ * never leaves a truncated file behind. The CRC32 of the whole file is written to a side file
+ * with the {@link #CHECKSUM_SUFFIX} suffix.
+ */
+public final class CarExporter {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = CarExporter.class.getSimpleName();
+
+    /** Output formats */
+    public enum Format {
+        /** Same columns as the files read by the importer, with a header line */
+        CSV(".csv"),
+        /** Length-prefixed records, see {@link BinaryFormat} */
+        BINARY(BinaryFormat.EXTENSION);
+
+        /** Extension of the files of this format */
+        public final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /** Suffix of the file holding the CRC32 of an export, in hexadecimal */
+    public static final String CHECKSUM_SUFFIX = ".crc32";
+
+    /** Number of cars read per query */
+    private static final int PAGE_SIZE = 500;
+
+    /** Size of the buffer written to the file channel */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Columns exported, in order. The ID is only used to read the next page. */
+    private static final String[] PROJECTION = {
+            CarEntry._ID,
+            CarEntry.COLUMN_CAR_NAME,
+            CarEntry.COLUMN_CAR_PRICE,
+            CarEntry.COLUMN_CAR_QUANTITY,
+            CarEntry.COLUMN_CAR_SUPPLIER,
+            CarEntry.COLUMN_CAR_EMAIL,
+            CarEntry.COLUMN_CAR_IMAGE};
+
+    /**
+     * Outcome of an export.
+     */
+    public static final class Result {
+        /** Cars exported */
+        public final int count;
+
+        /** CRC32 of the whole file */
+        public final long checksum;
+
+        Result(int count, long checksum) {
+            this.count = count;
+            this.checksum = checksum;
+        }
+    }
+
+    private final ContentResolver mContentResolver;
+
+    public CarExporter(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+    }
+
+    /**
+     * Export all the cars to the given file, replacing it. Don't call it on the main thread.
+     */
+    public Result export(File file, Format format) throws IOException {
+        File partFile = new File(file.getPath() + ".part");
+        FileOutputStream out = new FileOutputStream(partFile);
+        Result result;
+        try {
+            ChannelSink sink = new ChannelSink(out.getChannel());
+            int count = format == Format.CSV ? writeCsv(sink) : writeBinary(sink);
+            sink.flush();
+            out.getFD().sync();
+            result = new Result(count, sink.getChecksum());
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            partFile.delete();
+            throw e;
+        }
+        out.close();
+        if (!partFile.renameTo(file)) {
+            partFile.delete();
+            throw new IOException("Cannot rename " + partFile + " to " + file);
+        }
+        writeChecksum(new File(file.getPath() + CHECKSUM_SUFFIX), result.checksum, file.getName());
+        Log.i(LOG_TAG, "Exported " + result.count + " cars to " + file);
+        return result;
+    }
+
+    private int writeCsv(ChannelSink sink) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 1; i < PROJECTION.length; i++) {
+            if (i > 1) {
+                line.append(',');
+            }
+            line.append(PROJECTION[i]);
+        }
+        line.append('\n');
+        sink.write(line.toString().getBytes(UTF_8));
+
+        int count = 0;
+        long lastId = 0;
+        while (true) {
+            Cursor cursor = queryPage(lastId);
+            try {
+                if (!cursor.moveToFirst()) {
+                    return count;
+                }
+                do {
+                    line.setLength(0);
+                    for (int i = 1; i < PROJECTION.length; i++) {
+                        if (i > 1) {
+                            line.append(',');
+                        }
+                        appendCsvField(line, cursor.getString(i));
+                    }
+                    line.append('\n');
+                    sink.write(line.toString().getBytes(UTF_8));
+                    lastId = cursor.getLong(0);
+                    count++;
+                } while (cursor.moveToNext());
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private int writeBinary(ChannelSink sink) throws IOException {
+        sink.write(BinaryFormat.MAGIC);
+        sink.writeByte(BinaryFormat.VERSION);
+
+        int count = 0;
+        long lastId = 0;
+        byte[][] strings = new byte[4][];
+        while (true) {
+            Cursor cursor = queryPage(lastId);
+            try {
+                if (!cursor.moveToFirst()) {
+                    break;
+                }
+                do {
+                    strings[0] = encode(cursor.getString(1));
+                    strings[1] = encode(cursor.getString(4));
+                    strings[2] = encode(cursor.getString(5));
+                    strings[3] = encode(cursor.getString(6));
+                    // Two ints, and every string with its 2 bytes long length
+                    int length = 8;
+                    for (byte[] string : strings) {
+                        length += 2 + string.length;
+                    }
+                    sink.writeInt(length);
+                    writeString(sink, strings[0]);
+                    sink.writeInt(cursor.getInt(2));
+                    sink.writeInt(cursor.getInt(3));
+                    writeString(sink, strings[1]);
+                    writeString(sink, strings[2]);
+                    writeString(sink, strings[3]);
+                    lastId = cursor.getLong(0);
+                    count++;
+                } while (cursor.moveToNext());
+            } finally {
+                cursor.close();
+            }
+        }
+
+        // The trailer holds the checksum of everything before it
+        long checksum = sink.getChecksum();
+        sink.writeInt(BinaryFormat.END_OF_RECORDS);
+        sink.writeLong(count);
+        sink.writeLong(checksum);
+        return count;
+    }
+
+    /**
+     * Read the page of cars coming after the given ID.
+     */
+    private Cursor queryPage(long afterId) throws IOException {
+        Cursor cursor = mContentResolver.query(CarEntry.buildPageUri(afterId, PAGE_SIZE), PROJECTION,
+                null, null, null);
+        if (cursor == null) {
+            throw new IOException("Cannot read the cars");
+        }
+        return cursor;
+    }
+
+    private static byte[] encode(String value) throws IOException {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(UTF_8);
+        if (bytes.length > BinaryFormat.MAX_STRING_LENGTH) {
+            throw new IOException("Value too long to export: " + value.substring(0, 20) + "...");
+        }
+        return bytes;
+    }
+
+    private static void writeString(ChannelSink sink, byte[] bytes) throws IOException {
+        sink.writeShort(bytes.length);
+        sink.write(bytes);
+    }
+
+    /**
+     * Append a CSV field, quoted if it holds a comma, a quote or a line break.
+     */
+    private static void appendCsvField(StringBuilder line, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    /**
+     * Write the checksum file, in the format of the sum tools: the checksum then the file name.
+     */
+    private static void writeChecksum(File file, long checksum, String name) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+        try {
+            writer.write(String.format(Locale.ROOT, "%08x  %s\n", checksum, name));
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Buffers the bytes written to a file channel, and computes their CRC32 on the way.
+     */
+    private static final class ChannelSink {
+
+        private final FileChannel mChannel;
+        private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 mCrc = new CRC32();
+
+        ChannelSink(FileChannel channel) {
+            mChannel = channel;
+        }
+
+        void writeByte(int value) throws IOException {
+            ensureRemaining(1);
+            mBuffer.put((byte) value);
+        }
+
+        void writeShort(int value) throws IOException {
+            ensureRemaining(2);
+            mBuffer.putShort((short) value);
+        }
+
+        void writeInt(int value) throws IOException {
+            ensureRemaining(4);
+            mBuffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensureRemaining(8);
+            mBuffer.putLong(value);
+        }
+
+        void write(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!mBuffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(mBuffer.remaining(), bytes.length - offset);
+                mBuffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        /**
+         * Return the CRC32 of all the bytes written so far, writing the buffered ones first.
+         */
+        long getChecksum() throws IOException {
+            flush();
+            return mCrc.getValue();
+        }
+
+        private void ensureRemaining(int length) throws IOException {
+            if (mBuffer.remaining() < length) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            mBuffer.flip();
+            mCrc.update(mBuffer.array(), 0, mBuffer.limit());
+            while (mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer);
+            }
+            mBuffer.clear();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.util.Log;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+import com.edmilson.inventoryapp.data.CarValidator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Imports the cars of a CSV, JSON or binary file into
+ * {@link com.edmilson.inventoryapp.data.CarProvider}. The binary files are the ones written by
+ * {@link CarExporter}.
+ * <p>
+ * The file is read one car at a time and the cars are inserted in batches of a fixed size,
+ * each one in its own transaction through {@link ContentResolver#bulkInsert}, so the memory
+ * used doesn't depend on the size of the file. Every car is checked with the rules of the
+ * provider before it joins a batch: the bad ones are skipped and reported, the import goes on.
+ */
+public final class CarImporter {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = CarImporter.class.getSimpleName();
+
+    /** Number of cars inserted per transaction by default */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** Number of bad records kept in the result, the others are only counted */
+    private static final int MAX_ERRORS = 20;
+
+    /**
+     * Callback for the progress of an import, called after every batch on the importing thread.
+     */
+    public interface ProgressListener {
+        /**
+         * @param bytesRead bytes of the file read so far
+         * @param totalBytes size of the file, or -1 if it isn't known
+         * @param imported cars inserted so far
+         * @param rejected bad records skipped so far
+         */
+        void onProgress(long bytesRead, long totalBytes, int imported, int rejected);
+    }
+
+    /**
+     * Outcome of an import.
+     */
+    public static final class Result {
+        /** Cars inserted */
+        public final int imported;
+
+        /** Bad records skipped */
+        public final int rejected;
+
+        /** Description of the first bad records, with their number in the file */
+        public final List<String> errors;
+
+        Result(int imported, int rejected, List<String> errors) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.errors = Collections.unmodifiableList(errors);
+        }
+    }
+
+    private final ContentResolver mContentResolver;
+    private final int mBatchSize;
+
+    /** Picture given to the cars which don't have one, the provider requires it */
+    private final String mDefaultImage;
+
+    /**
+     * @param defaultImage Uri string of the picture of the cars without one, or null to reject them
+     */
+    public CarImporter(ContentResolver contentResolver, int batchSize, String defaultImage) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        mContentResolver = contentResolver;
+        mBatchSize = batchSize;
+        mDefaultImage = defaultImage;
+    }
+
+    /**
+     * Import the cars of the given stream, which is closed at the end. A binary file starts with
+     * its magic bytes and a JSON file with '[', any other file is read as CSV. Don't call it on
+     * the main thread. The checksum of a binary file is only known at its end, use
+     * {@link #verify} first to leave a corrupt one out altogether.
+     *
+     * @param totalBytes size of the file, or -1 if it isn't known
+     * @param listener notified after every batch, may be null
+     * @throws IOException if the file can't be read to the end; the batches already inserted stay
+     */
+    public Result importCars(InputStream in, long totalBytes, ProgressListener listener) throws IOException {
+        CountingInputStream counter = new CountingInputStream(in);
+        BufferedInputStream buffered = new BufferedInputStream(counter);
+        CarRecordReader records;
+        if (isBinary(buffered)) {
+            records = new BinaryCarReader(buffered);
+        } else {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(buffered, Charset.forName("UTF-8")));
+            records = isJson(reader) ? new JsonCarReader(reader) : new CsvCarReader(reader);
+        }
+
+        ContentValues[] batch = new ContentValues[mBatchSize];
+        int batchCount = 0;
+        int imported = 0;
+        int rejected = 0;
+        List<String> errors = new ArrayList<>();
+        try {
+            while (true) {
+                ContentValues values;
+                try {
+                    values = records.read();
+                    if (values == null) {
+                        break;
+                    }
+                    if (mDefaultImage != null && !values.containsKey(CarEntry.COLUMN_CAR_IMAGE)) {
+                        values.put(CarEntry.COLUMN_CAR_IMAGE, mDefaultImage);
+                    }
+                    CarValidator.validate(values);
+                } catch (IllegalArgumentException e) {
+                    rejected++;
+                    if (errors.size() < MAX_ERRORS) {
+                        errors.add(records.getRecordNumber() + ": " + e.getMessage());
+                    }
+                    continue;
+                }
+
+                batch[batchCount++] = values;
+                if (batchCount == mBatchSize) {
+                    batchCount = 0;
+                    imported += insert(batch, mBatchSize);
+                    if (listener != null) {
+                        listener.onProgress(counter.getCount(), totalBytes, imported, rejected);
+                    }
+                }
+            }
+        } finally {
+            // The cars read before an error are inserted too
+            if (batchCount != 0) {
+                int count = batchCount;
+                batchCount = 0;
+                imported += insert(batch, count);
+            }
+            records.close();
+        }
+        if (listener != null) {
+            listener.onProgress(counter.getCount(), totalBytes, imported, rejected);
+        }
+        Log.i(LOG_TAG, "Imported " + imported + " cars, rejected " + rejected);
+        return new Result(imported, rejected, errors);
+    }
+
+    /**
+     * Check the given stream against the checksum in its trailer if it holds a binary file,
+     * without importing anything. The stream is closed at the end.
+     *
+     * @return true if the file is binary and intact, false if it isn't binary
+     * @throws IOException if the binary file is corrupt or can't be read
+     */
+    public static boolean verify(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        try {
+            if (!isBinary(buffered)) {
+                return false;
+            }
+            BinaryCarReader records = new BinaryCarReader(buffered);
+            while (true) {
+                try {
+                    if (records.read() == null) {
+                        return true;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // A bad record is reported by the import, only the checksum matters here
+                }
+            }
+        } finally {
+            buffered.close();
+        }
+    }
+
+    /**
+     * Insert the first count cars of the batch in one transaction, and clear the batch.
+     */
+    private int insert(ContentValues[] batch, int count) {
+        ContentValues[] values = batch;
+        if (count < batch.length) {
+            values = new ContentValues[count];
+            System.arraycopy(batch, 0, values, 0, count);
+        }
+        int inserted = mContentResolver.bulkInsert(CarEntry.CONTENT_URI, values);
+        // Let the cars of the batch be collected
+        for (int i = 0; i < count; i++) {
+            batch[i] = null;
+        }
+        return inserted;
+    }
+
+    /**
+     * Return true if the stream starts with the magic bytes of a binary file.
+     */
+    private static boolean isBinary(BufferedInputStream in) throws IOException {
+        byte[] magic = new byte[BinaryFormat.MAGIC.length];
+        in.mark(magic.length);
+        int read = 0;
+        while (read < magic.length) {
+            int count = in.read(magic, read, magic.length - read);
+            if (count == -1) {
+                break;
+            }
+            read += count;
+        }
+        in.reset();
+        return read == magic.length && Arrays.equals(magic, BinaryFormat.MAGIC);
+    }
+
+    /**
+     * Return true if the content of the reader starts with '[', ignoring white space.
+     */
+    private static boolean isJson(BufferedReader reader) throws IOException {
+        while (true) {
+            reader.mark(1);
+            int c = reader.read();
+            if (c == -1) {
+                return false;
+            }
+            if (!Character.isWhitespace(c) && c != '\uFEFF') {
+                reader.reset();
+                return c == '[';
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read from a stream, to report the progress.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
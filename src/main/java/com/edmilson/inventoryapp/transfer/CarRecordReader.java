@@ -0,0 +1,95 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.content.ContentValues;
+
+import com.edmilson.inventoryapp.data.CarContract.CarEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the cars of a file one at a time, so only the current one is held in memory.
+ */
+abstract class CarRecordReader implements Closeable {
+
+    /** Columns read from the files, any other column is ignored */
+    static final String[] COLUMNS = {
+            CarEntry.COLUMN_CAR_NAME,
+            CarEntry.COLUMN_CAR_PRICE,
+            CarEntry.COLUMN_CAR_QUANTITY,
+            CarEntry.COLUMN_CAR_SUPPLIER,
+            CarEntry.COLUMN_CAR_EMAIL,
+            CarEntry.COLUMN_CAR_IMAGE};
+
+    /** Number of the last record read, starting at 1 */
+    private int mRecordNumber;
+
+    /**
+     * Read the next car, or return null at the end of the file. A record which can't be turned
+     * into a car throws an {@link IllegalArgumentException}, after which the next record can
+     * still be read. An {@link IOException} means the file can't be read any further.
+     */
+    final ContentValues read() throws IOException {
+        ContentValues values = new ContentValues();
+        boolean read;
+        try {
+            read = readRecord(values);
+        } catch (IllegalArgumentException e) {
+            // The record is skipped, but it still counts
+            mRecordNumber++;
+            throw e;
+        }
+        if (!read) {
+            return null;
+        }
+        mRecordNumber++;
+        return values;
+    }
+
+    /**
+     * Return the number of the last record read, or of the record that failed to be read.
+     */
+    final int getRecordNumber() {
+        return mRecordNumber;
+    }
+
+    /**
+     * Read the next record into the given values. Return false at the end of the file.
+     */
+    abstract boolean readRecord(ContentValues values) throws IOException;
+
+    /**
+     * Put the text value of a column into the values, converted to the type of the column.
+     * Blank values are left out, as if the column was missing.
+     */
+    static void putValue(ContentValues values, String column, String value) {
+        if (value == null) {
+            return;
+        }
+        value = value.trim();
+        if (value.isEmpty()) {
+            return;
+        }
+        if (CarEntry.COLUMN_CAR_PRICE.equals(column) || CarEntry.COLUMN_CAR_QUANTITY.equals(column)) {
+            try {
+                values.put(column, Integer.parseInt(value));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + column + ": " + value);
+            }
+        } else {
+            values.put(column, value);
+        }
+    }
+
+    /**
+     * Return true if the column is one of {@link #COLUMNS}.
+     */
+    static boolean isColumn(String name) {
+        for (String column : COLUMNS) {
+            if (column.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
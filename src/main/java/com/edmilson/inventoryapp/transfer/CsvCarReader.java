@@ -0,0 +1,138 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.content.ContentValues;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads cars from a CSV file (RFC 4180) one line at a time. The first line names the columns,
+ * e.g. name,price,quantity,supplier,email,image. Fields may be quoted, and quoted fields may
+ * hold commas, quotes (doubled) and line breaks.
+ */
+final class CsvCarReader extends CarRecordReader {
+
+    private final Reader mReader;
+
+    /** Column of each field of a line, null for the fields which aren't imported */
+    private String[] mColumns;
+
+    /** Fields of the current line, reused from one line to the next */
+    private final List<String> mFields = new ArrayList<>();
+    private final StringBuilder mField = new StringBuilder();
+
+    /** Character read ahead, or -2 if there is none */
+    private int mPeeked = -2;
+
+    CsvCarReader(Reader reader) {
+        mReader = reader;
+    }
+
+    @Override
+    boolean readRecord(ContentValues values) throws IOException {
+        if (mColumns == null) {
+            readHeader();
+        }
+        // Skip the blank lines
+        do {
+            if (!readLine()) {
+                return false;
+            }
+        } while (mFields.size() == 1 && mFields.get(0).isEmpty());
+
+        if (mFields.size() != mColumns.length) {
+            throw new IllegalArgumentException("Expected " + mColumns.length + " fields, found "
+                    + mFields.size());
+        }
+        for (int i = 0; i < mColumns.length; i++) {
+            if (mColumns[i] != null) {
+                putValue(values, mColumns[i], mFields.get(i));
+            }
+        }
+        return true;
+    }
+
+    private void readHeader() throws IOException {
+        if (!readLine()) {
+            throw new IOException("The file is empty");
+        }
+        mColumns = new String[mFields.size()];
+        for (int i = 0; i < mColumns.length; i++) {
+            String name = mFields.get(i).trim().toLowerCase(Locale.ROOT);
+            // A byte order mark may come before the first name
+            if (i == 0 && name.startsWith("\uFEFF")) {
+                name = name.substring(1);
+            }
+            mColumns[i] = isColumn(name) ? name : null;
+        }
+    }
+
+    /**
+     * Read the fields of the next line into {@link #mFields}. Return false at the end of the file.
+     */
+    private boolean readLine() throws IOException {
+        mFields.clear();
+        mField.setLength(0);
+        int c = readChar();
+        if (c == -1) {
+            return false;
+        }
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field");
+                }
+                if (c == '"') {
+                    if (peekChar() == '"') {
+                        // A doubled quote stands for one quote
+                        readChar();
+                        mField.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    mField.append((char) c);
+                }
+            } else if (c == '"' && mField.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                mFields.add(mField.toString());
+                mField.setLength(0);
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r' && peekChar() == '\n') {
+                    readChar();
+                }
+                mFields.add(mField.toString());
+                return true;
+            } else {
+                mField.append((char) c);
+            }
+            c = readChar();
+        }
+    }
+
+    private int readChar() throws IOException {
+        if (mPeeked != -2) {
+            int c = mPeeked;
+            mPeeked = -2;
+            return c;
+        }
+        return mReader.read();
+    }
+
+    private int peekChar() throws IOException {
+        if (mPeeked == -2) {
+            mPeeked = mReader.read();
+        }
+        return mPeeked;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
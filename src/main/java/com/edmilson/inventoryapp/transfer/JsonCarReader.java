@@ -0,0 +1,80 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.content.ContentValues;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Reads cars from a JSON file holding an array of objects, one object at a time, e.g.
+ * [{"name": "Ford Mustang", "price": 25845, "quantity": 3, "supplier": "Fast Car Store",
+ * "email": "order@fastcarstore.com"}]. Numbers may also be given as strings.
+ */
+final class JsonCarReader extends CarRecordReader {
+
+    private final JsonReader mReader;
+
+    private boolean mStarted;
+    private boolean mFinished;
+
+    JsonCarReader(Reader reader) {
+        mReader = new JsonReader(reader);
+    }
+
+    @Override
+    boolean readRecord(ContentValues values) throws IOException {
+        if (mFinished) {
+            return false;
+        }
+        if (!mStarted) {
+            mReader.beginArray();
+            mStarted = true;
+        }
+        if (!mReader.hasNext()) {
+            mReader.endArray();
+            mFinished = true;
+            return false;
+        }
+        if (mReader.peek() != JsonToken.BEGIN_OBJECT) {
+            mReader.skipValue();
+            throw new IllegalArgumentException("Expected an object");
+        }
+
+        // The whole object is read even if a value is wrong, so the next one can be read
+        String error = null;
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            String column = mReader.nextName().toLowerCase(Locale.ROOT);
+            if (!isColumn(column)) {
+                mReader.skipValue();
+                continue;
+            }
+            JsonToken token = mReader.peek();
+            if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+                try {
+                    putValue(values, column, mReader.nextString());
+                } catch (IllegalArgumentException e) {
+                    error = e.getMessage();
+                }
+            } else if (token == JsonToken.NULL) {
+                mReader.nextNull();
+            } else {
+                mReader.skipValue();
+                error = "Invalid " + column;
+            }
+        }
+        mReader.endObject();
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -0,0 +1,197 @@
+package com.edmilson.inventoryapp.transfer;
+
+import android.app.IntentService;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+import android.support.v4.content.LocalBroadcastManager;
+import android.util.Log;
+
+import com.edmilson.inventoryapp.R;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Runs the imports and exports of cars in the background, one at a time, so they go on when
+ * the user leaves the app. The progress and the outcome are broadcast locally with
+ * {@link #ACTION_PROGRESS} and {@link #ACTION_FINISHED}.
+ */
+public class TransferService extends IntentService {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = TransferService.class.getSimpleName();
+
+    /** Action importing the cars of the file given by the data of the intent */
+    public static final String ACTION_IMPORT = "com.edmilson.inventoryapp.action.IMPORT";
+
+    /** Action exporting all the cars in the {@link #EXTRA_FORMAT} format */
+    public static final String ACTION_EXPORT = "com.edmilson.inventoryapp.action.EXPORT";
+
+    /** Extra of {@link #ACTION_EXPORT}: name of the {@link CarExporter.Format} to write */
+    public static final String EXTRA_FORMAT = "format";
+
+    /** Broadcast while a transfer runs, with {@link #EXTRA_PERCENT} and {@link #EXTRA_COUNT} */
+    public static final String ACTION_PROGRESS = "com.edmilson.inventoryapp.action.TRANSFER_PROGRESS";
+
+    /**
+     * Broadcast when a transfer ends, with {@link #EXTRA_COUNT}, {@link #EXTRA_REJECTED} and,
+     * if it failed, {@link #EXTRA_ERROR}. An export also has {@link #EXTRA_FILE}.
+     */
+    public static final String ACTION_FINISHED = "com.edmilson.inventoryapp.action.TRANSFER_FINISHED";
+
+    /** Extra of the broadcasts: percentage done, or -1 if the size of the file isn't known */
+    public static final String EXTRA_PERCENT = "percent";
+
+    /** Extra of the broadcasts: number of cars transferred so far */
+    public static final String EXTRA_COUNT = "count";
+
+    /** Extra of the broadcasts: number of bad records skipped */
+    public static final String EXTRA_REJECTED = "rejected";
+
+    /** Extra of the broadcasts: message of the error which stopped the transfer */
+    public static final String EXTRA_ERROR = "error";
+
+    /** Extra of the broadcasts: path of the file written by an export */
+    public static final String EXTRA_FILE = "file";
+
+    /** Directory of the exports, in the files of the app */
+    private static final String EXPORT_DIRECTORY = "exports";
+
+    public TransferService() {
+        super(LOG_TAG);
+    }
+
+    /**
+     * Import the cars of the file with the given Uri in the background.
+     */
+    public static void startImport(Context context, Uri uri) {
+        Intent intent = new Intent(context, TransferService.class);
+        intent.setAction(ACTION_IMPORT);
+        intent.setData(uri);
+        // The permission to read the picked file was granted to the activity, pass it on
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        context.startService(intent);
+    }
+
+    /**
+     * Export all the cars in the background, to a new file of the exports directory.
+     */
+    public static void startExport(Context context, CarExporter.Format format) {
+        Intent intent = new Intent(context, TransferService.class);
+        intent.setAction(ACTION_EXPORT);
+        intent.putExtra(EXTRA_FORMAT, format.name());
+        context.startService(intent);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null) {
+            return;
+        }
+        if (ACTION_IMPORT.equals(intent.getAction())) {
+            importCars(intent.getData());
+        } else if (ACTION_EXPORT.equals(intent.getAction())) {
+            exportCars(CarExporter.Format.valueOf(intent.getStringExtra(EXTRA_FORMAT)));
+        }
+    }
+
+    private void importCars(Uri uri) {
+        ContentResolver contentResolver = getContentResolver();
+        CarImporter importer = new CarImporter(contentResolver, CarImporter.DEFAULT_BATCH_SIZE,
+                getDefaultImage());
+        Intent finished = new Intent(ACTION_FINISHED);
+        try {
+            // A corrupt binary file is turned down before any of its cars is inserted
+            CarImporter.verify(openInputStream(uri));
+            InputStream in = openInputStream(uri);
+            CarImporter.Result result = importer.importCars(in, getSize(uri), new CarImporter.ProgressListener() {
+                @Override
+                public void onProgress(long bytesRead, long totalBytes, int imported, int rejected) {
+                    Intent progress = new Intent(ACTION_PROGRESS);
+                    progress.putExtra(EXTRA_PERCENT, totalBytes > 0 ? (int) (bytesRead * 100 / totalBytes) : -1);
+                    progress.putExtra(EXTRA_COUNT, imported);
+                    progress.putExtra(EXTRA_REJECTED, rejected);
+                    LocalBroadcastManager.getInstance(TransferService.this).sendBroadcast(progress);
+                }
+            });
+            for (String error : result.errors) {
+                Log.w(LOG_TAG, "Skipped record " + error);
+            }
+            finished.putExtra(EXTRA_COUNT, result.imported);
+            finished.putExtra(EXTRA_REJECTED, result.rejected);
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Failed to import " + uri, e);
+            finished.putExtra(EXTRA_ERROR, String.valueOf(e.getMessage()));
+        }
+        LocalBroadcastManager.getInstance(this).sendBroadcast(finished);
+    }
+
+    private void exportCars(CarExporter.Format format) {
+        Intent finished = new Intent(ACTION_FINISHED);
+        // The number of cars isn't known up front, only show that the export runs
+        Intent progress = new Intent(ACTION_PROGRESS);
+        progress.putExtra(EXTRA_PERCENT, -1);
+        LocalBroadcastManager.getInstance(this).sendBroadcast(progress);
+        try {
+            File directory = getExternalFilesDir(EXPORT_DIRECTORY);
+            if (directory == null) {
+                // The external storage isn't there, keep the export in the internal one
+                directory = new File(getFilesDir(), EXPORT_DIRECTORY);
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            String name = "inventory-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
+            File file = new File(directory, name + format.extension);
+            CarExporter.Result result = new CarExporter(getContentResolver()).export(file, format);
+            finished.putExtra(EXTRA_COUNT, result.count);
+            finished.putExtra(EXTRA_FILE, file.getPath());
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Failed to export the cars", e);
+            finished.putExtra(EXTRA_ERROR, String.valueOf(e.getMessage()));
+            finished.putExtra(EXTRA_FILE, "");
+        }
+        LocalBroadcastManager.getInstance(this).sendBroadcast(finished);
+    }
+
+    private InputStream openInputStream(Uri uri) throws IOException {
+        InputStream in = getContentResolver().openInputStream(uri);
+        if (in == null) {
+            throw new IOException("Cannot open " + uri);
+        }
+        return in;
+    }
+
+    /**
+     * Return the size of the file with the given Uri, or -1 if it isn't known.
+     */
+    private long getSize(Uri uri) {
+        Cursor cursor = getContentResolver().query(uri, new String[]{OpenableColumns.SIZE}, null, null, null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the Uri string of the default car picture, given to the imported cars without one.
+     */
+    private String getDefaultImage() {
+        return ContentResolver.SCHEME_ANDROID_RESOURCE + "://"
+                + getResources().getResourcePackageName(R.drawable.car_default)
+                + '/' + getResources().getResourceTypeName(R.drawable.car_default)
+                + '/' + getResources().getResourceEntryName(R.drawable.car_default);
+    }
+}